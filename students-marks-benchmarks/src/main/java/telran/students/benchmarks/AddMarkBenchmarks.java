@@ -0,0 +1,92 @@
+package telran.students.benchmarks;
+
+import java.time.LocalDate;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import telran.students.StudentsMarksMongoDbApplication;
+import telran.students.dto.Mark;
+import telran.students.dto.Student;
+import telran.students.model.StudentDoc;
+import telran.students.repo.StudentRepo;
+import telran.students.service.StudentsService;
+
+//adding a mark to a student having nMarks marks: read-modify-save of the whole document
+//compared with the server side $push returning the marks (findAndModify) and without returning them
+//the student is recreated before each iteration, so its size grows only by the marks of one iteration
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AddMarkBenchmarks {
+	private static final long ID = 100_000;
+	private static final Mark MARK = new Mark("subject1", LocalDate.parse("2024-01-01"), 90);
+
+	@Param({ "10", "1000", "10000" })
+	int nMarks;
+
+	ConfigurableApplicationContext context;
+	StudentsService studentsService;
+	StudentRepo studentRepo;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		context = new SpringApplicationBuilder(StudentsMarksMongoDbApplication.class)
+				.web(WebApplicationType.NONE)
+				.run("--de.flapdoodle.mongodb.embedded.storage.repl-set-name=rs0",
+						"--logging.level.telran=warn");
+		studentsService = context.getBean(StudentsService.class);
+		studentRepo = context.getBean(StudentRepo.class);
+	}
+
+	@Setup(Level.Iteration)
+	public void createStudent() {
+		StudentDoc studentDoc = StudentDoc.of(new Student(ID, "benchmark", "050-0000000"));
+		for (int i = 0; i < nMarks; i++) {
+			studentDoc.addMark(MARK);
+		}
+		//versioned document without version is inserted by save
+		studentRepo.deleteById(ID);
+		studentRepo.save(studentDoc);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		context.close();
+	}
+
+	@Benchmark
+	public StudentDoc readModifySave() {
+		StudentDoc studentDoc = studentRepo.findById(ID).orElseThrow();
+		studentDoc.addMark(MARK);
+		return studentRepo.save(studentDoc);
+	}
+
+	@Benchmark
+	public Object findAndModify() {
+		return studentsService.addMark(ID, MARK);
+	}
+
+	@Benchmark
+	public void pushOnly() {
+		studentsService.appendMark(ID, MARK);
+	}
+}
@@ -0,0 +1,108 @@
+package telran.students.benchmarks;
+
+import java.time.LocalDate;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.dao.OptimisticLockingFailureException;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import telran.students.StudentsMarksMongoDbApplication;
+import telran.students.dto.Mark;
+import telran.students.dto.Student;
+import telran.students.generator.GeneratorConfig;
+import telran.students.generator.StudentsDataGenerator;
+import telran.students.service.StudentsService;
+
+//many threads writing the same student: versioned phone updates (retried on conflicts)
+//alone and together with the atomic mark updates, which increment the version as well
+//the numbers of retries and of the rejected updates are printed at the end of the trial
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class ContentionBenchmarks {
+	private static final long ID = 1;
+	private static final LocalDate DATE = LocalDate.parse("2024-01-01");
+
+	@Param({ "1", "5" })
+	int maxAttempts;
+
+	ConfigurableApplicationContext context;
+	StudentsService studentsService;
+	MeterRegistry meterRegistry;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		context = new SpringApplicationBuilder(StudentsMarksMongoDbApplication.class)
+				.web(WebApplicationType.NONE)
+				.run("--de.flapdoodle.mongodb.embedded.storage.repl-set-name=rs0",
+						"--logging.level.telran=warn",
+						"--app.students.optimistic.max-attempts=" + maxAttempts);
+		studentsService = context.getBean(StudentsService.class);
+		meterRegistry = context.getBean(MeterRegistry.class);
+		context.getBean(StudentsDataGenerator.class)
+			.generate(GeneratorConfig.builder().nStudents(100).meanMarks(20).build());
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		System.out.printf("%nretries %.0f, rejected updates %.0f%n",
+				meterRegistry.counter("students.optimistic.retries").count(),
+				meterRegistry.counter("students.optimistic.failures").count());
+		context.close();
+	}
+
+	private Student updatePhone() {
+		Student res = null;
+		try {
+			res = studentsService.updatePhone(ID,
+					String.format("050-%07d", ThreadLocalRandom.current().nextInt(10_000_000)));
+		} catch (OptimisticLockingFailureException e) {
+			//counted by students.optimistic.failures
+		}
+		return res;
+	}
+
+	@Benchmark
+	@Group("phones")
+	@GroupThreads(8)
+	public Student phonesUpdatePhone() {
+		return updatePhone();
+	}
+
+	@Benchmark
+	@Group("mixed")
+	@GroupThreads(4)
+	public Student mixedUpdatePhone() {
+		return updatePhone();
+	}
+
+	@Benchmark
+	@Group("mixed")
+	@GroupThreads(4)
+	public void mixedAppendMark() {
+		studentsService.appendMark(ID,
+				new Mark(StudentsDataGenerator.getSubject(0), DATE, 50 + ThreadLocalRandom.current().nextInt(51)));
+	}
+}
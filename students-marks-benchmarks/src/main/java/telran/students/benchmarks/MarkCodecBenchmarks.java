@@ -0,0 +1,100 @@
+package telran.students.benchmarks;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+import org.bson.BsonBinaryReader;
+import org.bson.ByteBuf;
+import org.bson.Document;
+import org.bson.RawBsonDocument;
+import org.bson.codecs.DecoderContext;
+import org.bson.codecs.DocumentCodec;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.data.mongodb.core.convert.MappingMongoConverter;
+import org.springframework.data.mongodb.core.convert.MongoCustomConversions;
+import org.springframework.data.mongodb.core.convert.NoOpDbRefResolver;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+
+import telran.students.configuration.MarkConverters;
+import telran.students.generator.GeneratorConfig;
+import telran.students.generator.MarksDistribution;
+import telran.students.generator.StudentsDataGenerator;
+import telran.students.model.StudentDoc;
+
+//document size and encode / decode time of a student document with the legacy (reflection mapped)
+//and the compact (MarkConverters with subject ids) formats of marks
+//no database is required: the document is encoded to BSON bytes and decoded from them as by the driver
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MarkCodecBenchmarks {
+	private static final DocumentCodec DOCUMENT_CODEC = new DocumentCodec();
+
+	public enum Format {
+		LEGACY, COMPACT
+	}
+
+	@Param({ "LEGACY", "COMPACT" })
+	Format format;
+	@Param({ "20", "1000" })
+	int nMarks;
+
+	//in memory subjects dictionary: the subject id is the index in the list
+	List<String> subjects = new ArrayList<>();
+	MappingMongoConverter converter;
+	StudentDoc studentDoc;
+	byte[] bytes;
+
+	@Setup
+	public void setUp() {
+		MongoCustomConversions conversions = new MongoCustomConversions(
+				format == Format.COMPACT ? MarkConverters.getConverters(subjects::indexOf, subjects::get) : List.of());
+		MongoMappingContext mappingContext = new MongoMappingContext();
+		mappingContext.setSimpleTypeHolder(conversions.getSimpleTypeHolder());
+		mappingContext.afterPropertiesSet();
+		converter = new MappingMongoConverter(NoOpDbRefResolver.INSTANCE, mappingContext);
+		converter.setCustomConversions(conversions);
+		converter.afterPropertiesSet();
+		GeneratorConfig config = GeneratorConfig.builder().meanMarks(nMarks)
+				.marksDistribution(MarksDistribution.CONSTANT).build();
+		IntStream.range(0, config.nSubjects()).mapToObj(StudentsDataGenerator::getSubject).forEach(subjects::add);
+		studentDoc = StudentDoc.of(StudentsDataGenerator.getStudent(1));
+		StudentsDataGenerator.getMarks(config, 1).forEach(studentDoc::addMark);
+		bytes = encode();
+		System.out.printf("%n%s format, %d marks: document size %d bytes (%.1f bytes per mark)%n", format,
+				studentDoc.getMarks().size(), bytes.length, (double) bytes.length / studentDoc.getMarks().size());
+	}
+
+	@Benchmark
+	public byte[] encode() {
+		Document document = new Document();
+		converter.write(studentDoc, document);
+		ByteBuf byteBuf = new RawBsonDocument(document, DOCUMENT_CODEC).getByteBuffer();
+		byte[] res = new byte[byteBuf.remaining()];
+		byteBuf.get(res);
+		return res;
+	}
+
+	@Benchmark
+	public StudentDoc decode() {
+		Document document = DOCUMENT_CODEC.decode(new BsonBinaryReader(ByteBuffer.wrap(bytes)),
+				DecoderContext.builder().build());
+		return converter.read(StudentDoc.class, document);
+	}
+}
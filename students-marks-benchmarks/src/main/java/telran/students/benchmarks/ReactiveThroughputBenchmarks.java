@@ -0,0 +1,84 @@
+package telran.students.benchmarks;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import reactor.core.publisher.Flux;
+import telran.students.StudentsMarksMongoDbApplication;
+import telran.students.dto.Student;
+import telran.students.generator.GeneratorConfig;
+import telran.students.generator.StudentsDataGenerator;
+import telran.students.service.ReactiveStudentsService;
+import telran.students.service.StudentsService;
+
+//throughput of the same query under many concurrent requests:
+//the blocking service called by 64 threads and the reactive one with 512 requests in flight from one thread
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class ReactiveThroughputBenchmarks {
+	private static final int CONCURRENCY = 512;
+
+	@Param("1000")
+	int nStudents;
+
+	ConfigurableApplicationContext context;
+	StudentsService studentsService;
+	ReactiveStudentsService reactiveStudentsService;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		context = new SpringApplicationBuilder(StudentsMarksMongoDbApplication.class)
+				.web(WebApplicationType.NONE)
+				.run("--de.flapdoodle.mongodb.embedded.storage.repl-set-name=rs0",
+						"--logging.level.telran=warn",
+						"--app.students.reactive.enabled=true",
+						//the queries themselves are compared, not the caches
+						"--app.students.query-cache.enabled=false");
+		studentsService = context.getBean(StudentsService.class);
+		reactiveStudentsService = context.getBean(ReactiveStudentsService.class);
+		context.getBean(StudentsDataGenerator.class)
+			.generate(GeneratorConfig.builder().nStudents(nStudents).meanMarks(10).build());
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		context.close();
+	}
+
+	@Benchmark
+	@Threads(64)
+	public List<Student> blocking() {
+		return studentsService.getStudentsAllGoodMarks(70);
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(CONCURRENCY * 4)
+	public List<Student> reactive() {
+		return Flux.range(0, CONCURRENCY * 4)
+			.flatMap(i -> reactiveStudentsService.getStudentsAllGoodMarks(70).collectList(), CONCURRENCY)
+			.blockLast();
+	}
+}
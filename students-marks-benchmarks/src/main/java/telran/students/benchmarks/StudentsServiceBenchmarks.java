@@ -0,0 +1,250 @@
+package telran.students.benchmarks;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import telran.students.StudentsMarksMongoDbApplication;
+import telran.students.dto.*;
+import telran.students.generator.GeneratorConfig;
+import telran.students.generator.MarksDistribution;
+import telran.students.generator.StudentsDataGenerator;
+import telran.students.service.AvgScoresView;
+import telran.students.service.ColumnarSnapshot;
+import telran.students.service.Leaderboards;
+import telran.students.service.StudentsService;
+
+//throughput (ops/ms) and latency distribution (ms/op) of the StudentsService methods
+//the application context with embedded MongoDB (single node replica set for transactions)
+//is started and filled by StudentsDataGenerator once per fork
+//write benchmarks grow the dataset during the trial
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class StudentsServiceBenchmarks {
+	@Param("10000")
+	int nStudents;
+	//mean number of marks per student
+	@Param("20")
+	int nMarks;
+	@Param("UNIFORM")
+	MarksDistribution marksDistribution;
+	@Param("10")
+	int nSubjects;
+	@Param("true")
+	boolean cacheEnabled;
+
+	ConfigurableApplicationContext context;
+	StudentsService studentsService;
+	ColumnarSnapshot columnarSnapshot;
+	GeneratorConfig config;
+	AtomicLong nextId;
+	LocalDate from;
+	LocalDate to;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		context = new SpringApplicationBuilder(StudentsMarksMongoDbApplication.class)
+				.web(WebApplicationType.NONE)
+				.run("--de.flapdoodle.mongodb.embedded.storage.repl-set-name=rs0",
+						"--logging.level.telran=warn",
+						"--app.students.cache.enabled=" + cacheEnabled,
+						"--app.students.query-cache.enabled=" + cacheEnabled,
+						"--app.students.columnar.enabled=true");
+		studentsService = context.getBean(StudentsService.class);
+		config = GeneratorConfig.builder().nStudents(nStudents).meanMarks(nMarks)
+				.marksDistribution(marksDistribution).nSubjects(nSubjects).build();
+		context.getBean(StudentsDataGenerator.class).generate(config);
+		context.getBean(AvgScoresView.class).rebuild();
+		context.getBean(Leaderboards.class).reload();
+		columnarSnapshot = context.getBean(ColumnarSnapshot.class);
+		columnarSnapshot.reload();
+		nextId = new AtomicLong(nStudents + 1L);
+		from = config.fromDate().plusMonths(3);
+		to = from.plusDays(30);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		context.close();
+	}
+
+	private long randomId() {
+		return ThreadLocalRandom.current().nextLong(1, nStudents + 1L);
+	}
+
+	private String randomSubject() {
+		return StudentsDataGenerator.getSubject(ThreadLocalRandom.current().nextInt(nSubjects));
+	}
+
+	private Mark randomMark() {
+		ThreadLocalRandom random = ThreadLocalRandom.current();
+		return new Mark(randomSubject(), from.plusDays(random.nextInt(30)), 50 + random.nextInt(51));
+	}
+
+	@Benchmark
+	public Student getStudent() {
+		return studentsService.getStudent(randomId());
+	}
+
+	@Benchmark
+	public Student getStudentByPhone() {
+		return studentsService.getStudentByPhone(StudentsDataGenerator.getPhone(randomId()));
+	}
+
+	@Benchmark
+	public List<Mark> getMarks() {
+		return studentsService.getMarks(randomId());
+	}
+
+	@Benchmark
+	public List<Student> getStudentsByPhonePrefix() {
+		return studentsService.getStudentsByPhonePrefix(StudentsDataGenerator.getPhone(randomId()).substring(0, 6));
+	}
+
+	@Benchmark
+	public List<Student> getStudentsByPhonePrefixPage() {
+		return studentsService.getStudentsByPhonePrefix("05", StudentsDataGenerator.getPhone(randomId()), 100);
+	}
+
+	@Benchmark
+	public List<Student> getStudentsAllGoodMarks() {
+		return studentsService.getStudentsAllGoodMarks(60);
+	}
+
+	@Benchmark
+	public List<Student> getStudentsFewMarks() {
+		return studentsService.getStudentsFewMarks(nMarks);
+	}
+
+	@Benchmark
+	public List<Student> getStudentsAllGoodMarksSubject() {
+		return studentsService.getStudentsAllGoodMarksSubject(randomSubject(), 90);
+	}
+
+	@Benchmark
+	public List<Student> getStudentsMarksAmountBetween() {
+		return studentsService.getStudentsMarksAmountBetween(nMarks, nMarks + 1);
+	}
+
+	@Benchmark
+	public long streamStudentsMarksAmountBetween() {
+		try (Stream<Student> students = studentsService.streamStudentsMarksAmountBetween(nMarks, nMarks + 1)) {
+			return students.count();
+		}
+	}
+
+	@Benchmark
+	public StudentsPage getStudentsMarksAmountBetweenPage() {
+		return studentsService.getStudentsMarksAmountBetween(nMarks, nMarks + 1, null, 100);
+	}
+
+	@Benchmark
+	public List<Mark> getStudentSubjectMarks() {
+		return studentsService.getStudentSubjectMarks(randomId(), randomSubject());
+	}
+
+	@Benchmark
+	public List<NameAvgScore> getStudentAvgScoreGreater() {
+		return studentsService.getStudentAvgScoreGreater(90);
+	}
+
+	@Benchmark
+	public List<Mark> getStudentMarksAtDates() {
+		return studentsService.getStudentMarksAtDates(randomId(), from, to);
+	}
+
+	@Benchmark
+	public List<SubjectPeriodStats> getMarksStats() {
+		return studentsService.getMarksStats(config.fromDate(), config.toDate(), StatsPeriod.MONTH, 10);
+	}
+
+	@Benchmark
+	public List<Student> getBestStudents() {
+		return studentsService.getBestStudents(10);
+	}
+
+	@Benchmark
+	public List<Student> getWorstStudents() {
+		return studentsService.getWorstStudents(10);
+	}
+
+	//the same queries answered by the columnar snapshot
+	@Benchmark
+	public List<Student> snapshotGetStudentsAllGoodMarks() {
+		return columnarSnapshot.getStudentsAllGoodMarks(60);
+	}
+
+	@Benchmark
+	public List<Student> snapshotGetStudentsAllGoodMarksSubject() {
+		return columnarSnapshot.getStudentsAllGoodMarksSubject(randomSubject(), 90);
+	}
+
+	@Benchmark
+	public List<NameAvgScore> snapshotGetStudentAvgScoreGreater() {
+		return columnarSnapshot.getAvgScoreGreater(90);
+	}
+
+	@Benchmark
+	public List<Student> snapshotGetBestStudents() {
+		return columnarSnapshot.getBest(10);
+	}
+
+	@Benchmark
+	public List<Mark> addMark() {
+		return studentsService.addMark(randomId(), randomMark());
+	}
+
+	@Benchmark
+	public void appendMark() {
+		studentsService.appendMark(randomId(), randomMark());
+	}
+
+	@Benchmark
+	public BulkResult addMarks() {
+		return studentsService.addMarks(Map.of(randomId(), List.of(randomMark(), randomMark())));
+	}
+
+	@Benchmark
+	public Student updatePhone() {
+		long id = randomId();
+		return studentsService.updatePhone(id, StudentsDataGenerator.getPhone(id));
+	}
+
+	@Benchmark
+	public Student addRemoveStudent() {
+		long id = nextId.getAndIncrement();
+		studentsService.addStudent(new Student(id, "name" + id, StudentsDataGenerator.getPhone(id)));
+		return studentsService.removeStudent(id);
+	}
+
+	@Benchmark
+	public BulkResult addStudents() {
+		long id = nextId.getAndIncrement();
+		return studentsService.addStudents(List.of(new Student(id, "name" + id, StudentsDataGenerator.getPhone(id))));
+	}
+}
@@ -0,0 +1,110 @@
+package telran.students.configuration;
+
+import static telran.students.model.MarkFields.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import org.bson.Document;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.domain.Sort.Direction;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.index.IndexInfo;
+import org.springframework.data.mongodb.core.index.IndexOperations;
+import org.springframework.stereotype.Component;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import telran.students.model.MarksBucketDoc;
+import telran.students.model.StudentDoc;
+import telran.students.service.AvgScoresView;
+import telran.students.service.DuplicateKeys;
+import telran.students.service.MarksBuckets;
+
+//the indexes are ensured when the beans are created, before the web server is started
+//and before the migrations (ApplicationReadyEvent), so no request is served without the unique indexes
+@Component
+@Slf4j
+@RequiredArgsConstructor
+public class IndexesManager implements SmartInitializingSingleton {
+	final MongoTemplate mongoTemplate;
+	final MarksBuckets marksBuckets;
+
+	static final List<Index> STUDENTS_INDEXES = List.of(
+			//sparse: students without phone are not indexed
+			new Index().on("phone", Direction.ASC).unique().sparse().named(DuplicateKeys.PHONE_INDEX),
+			//marks are stored in the compact format (MarkConverters)
+			new Index().on(marks(SCORE), Direction.ASC).named("marks_v"),
+			new Index().on(marks(SUBJECT), Direction.ASC).on(marks(SCORE), Direction.ASC).named("marks_s_v"),
+			new Index().on(marks(SUBJECT), Direction.ASC).on(marks(DATE), Direction.ASC).named("marks_s_d"),
+			//date range of the marks statistics
+			new Index().on(marks(DATE), Direction.ASC).named("marks_d"),
+			new Index().on("marksCount", Direction.ASC).named("marks_count"),
+			new Index().on("goodMarksCount", Direction.DESC).on("_id", Direction.ASC).named("good_marks_count"),
+			new Index().on("scoreSum", Direction.ASC).on("_id", Direction.ASC).named("score_sum"));
+	static final List<Index> MARKS_BUCKETS_INDEXES = List.of(
+			//the last bucket of a student is found by studentId and seq, unique to insert a bucket once
+			new Index().on("studentId", Direction.ASC).on("seq", Direction.ASC).unique().named("student_seq"),
+			new Index().on(marks(SUBJECT), Direction.ASC).named("marks_s"),
+			new Index().on(marks(DATE), Direction.ASC).named("marks_d"));
+	static final List<Index> AVG_SCORES_INDEXES = List.of(
+			new Index().on("avgScore", Direction.DESC).named("avg_score"));
+
+	@Override
+	public void afterSingletonsInstantiated() {
+		ensureIndexes(mongoTemplate.indexOps(StudentDoc.class), STUDENTS_INDEXES);
+		ensureIndexes(mongoTemplate.indexOps(AvgScoresView.COLLECTION), AVG_SCORES_INDEXES);
+		if (marksBuckets.isEnabled()) {
+			ensureIndexes(mongoTemplate.indexOps(MarksBucketDoc.class), MARKS_BUCKETS_INDEXES);
+		}
+	}
+
+	private void ensureIndexes(IndexOperations indexOps, List<Index> indexes) {
+		//only missing indexes are created, existing ones are compared with the definitions
+		//and the drift is logged (dropping or rebuilding an index is an administrator decision)
+		Map<String, IndexInfo> existingIndexes = indexOps.getIndexInfo().stream()
+				.collect(Collectors.toMap(IndexInfo::getName, Function.identity()));
+		for (Index index : indexes) {
+			String name = index.getIndexOptions().getString("name");
+			IndexInfo indexInfo = existingIndexes.remove(name);
+			if (indexInfo == null) {
+				createIndex(indexOps, index, name);
+			} else if (!isMatching(index, indexInfo)) {
+				log.warn("index {} differs from definition: expected keys {} options {}, actual {}", name,
+						index.getIndexKeys(), index.getIndexOptions(), indexInfo);
+			} else {
+				log.debug("index {} exists", name);
+			}
+		}
+		existingIndexes.remove("_id_");
+		existingIndexes.values().forEach(indexInfo -> log.warn("index {} is not defined: {}",
+				indexInfo.getName(), indexInfo));
+	}
+
+	private void createIndex(IndexOperations indexOps, Index index, String name) {
+		try {
+			indexOps.ensureIndex(index);
+			log.info("created index {} keys {}", name, index.getIndexKeys());
+		} catch (DuplicateKeyException e) {
+			//the existing documents violate the unique index, they are to be fixed by an administrator
+			log.error("index {} can't be created, existing documents have duplicate keys {}: {}", name,
+					index.getIndexKeys(), e.getMessage());
+		}
+	}
+
+	private boolean isMatching(Index index, IndexInfo indexInfo) {
+		Document actualKeys = new Document();
+		indexInfo.getIndexFields().forEach(field -> actualKeys.append(field.getKey(),
+				field.getDirection() == Direction.DESC ? -1 : 1));
+		Document options = index.getIndexOptions();
+		//order of the keys matters for compound indexes
+		return new ArrayList<>(index.getIndexKeys().entrySet()).equals(new ArrayList<>(actualKeys.entrySet()))
+				&& options.getBoolean("unique", false) == indexInfo.isUnique()
+				&& options.getBoolean("sparse", false) == indexInfo.isSparse();
+	}
+}
@@ -0,0 +1,73 @@
+package telran.students.configuration;
+
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.Date;
+import java.util.List;
+import java.util.function.IntFunction;
+import java.util.function.ToIntFunction;
+
+import org.bson.Document;
+import org.springframework.core.convert.converter.Converter;
+import org.springframework.data.convert.ReadingConverter;
+import org.springframework.data.convert.WritingConverter;
+
+import telran.students.dto.Mark;
+import static telran.students.model.MarkFields.*;
+
+//compact format of Mark: {s: subject id as int32, d: epoch day as int32, v: score as int32}
+//the marks are converted directly without the reflection based mapping and without time zone conversions
+//subject ids are given by the dictionary functions (SubjectsDictionary)
+public final class MarkConverters {
+	private MarkConverters() {
+	}
+
+	public static List<Converter<?, ?>> getConverters(ToIntFunction<String> subjectIds,
+			IntFunction<String> subjectNames) {
+		return List.of(new MarkWritingConverter(subjectIds), new MarkReadingConverter(subjectNames));
+	}
+
+	@WritingConverter
+	public record MarkWritingConverter(ToIntFunction<String> subjectIds) implements Converter<Mark, Document> {
+		@Override
+		public Document convert(Mark mark) {
+			return new Document(SUBJECT, mark.subject() == null ? null : subjectIds.applyAsInt(mark.subject()))
+					.append(DATE, mark.date() == null ? null : Math.toIntExact(mark.date().toEpochDay()))
+					.append(SCORE, mark.score());
+		}
+	}
+
+	@ReadingConverter
+	public record MarkReadingConverter(IntFunction<String> subjectNames) implements Converter<Document, Mark> {
+		@Override
+		public Mark convert(Document document) {
+			//marks written before the compact format and before the dictionary are read as well
+			//(see MarksFormatMigration)
+			return document.containsKey(SCORE)
+					? new Mark(getSubject(document.get(SUBJECT)), toLocalDate(document.get(DATE)),
+							getInt(document, SCORE))
+					: new Mark(document.getString(LEGACY_SUBJECT), toLocalDate(document.get(LEGACY_DATE)),
+							getInt(document, LEGACY_SCORE));
+		}
+
+		private String getSubject(Object value) {
+			return value instanceof Number id ? subjectNames.apply(id.intValue()) : (String) value;
+		}
+
+		private static LocalDate toLocalDate(Object value) {
+			LocalDate res = null;
+			if (value instanceof Number epochDay) {
+				res = LocalDate.ofEpochDay(epochDay.longValue());
+			} else if (value instanceof Date date) {
+				//legacy dates are written by Spring Data at the start of the day in the default time zone
+				res = date.toInstant().atZone(ZoneId.systemDefault()).toLocalDate();
+			}
+			return res;
+		}
+
+		private static int getInt(Document document, String field) {
+			Object value = document.get(field);
+			return value instanceof Number number ? number.intValue() : 0;
+		}
+	}
+}
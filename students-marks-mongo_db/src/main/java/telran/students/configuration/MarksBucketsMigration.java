@@ -0,0 +1,27 @@
+package telran.students.configuration;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+import lombok.RequiredArgsConstructor;
+import telran.students.service.MarksBuckets;
+
+//moves the embedded marks into buckets when the bucketed storage of marks is enabled
+@Component
+@RequiredArgsConstructor
+public class MarksBucketsMigration {
+	final MarksBuckets marksBuckets;
+	@Value("${app.students.marks.buckets.migrate-on-startup:true}")
+	boolean migrateOnStartup;
+
+	@EventListener(ApplicationReadyEvent.class)
+	@Order(StartupOrder.BUCKETS_MIGRATION)
+	public void migrateOnStartup() {
+		if (marksBuckets.isEnabled() && migrateOnStartup) {
+			marksBuckets.migrate();
+		}
+	}
+}
@@ -0,0 +1,113 @@
+package telran.students.configuration;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.annotation.Order;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.BulkOperations.BulkMode;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.convert.MongoConverter;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.schema.JsonSchemaObject.Type;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Component;
+
+import com.mongodb.bulk.BulkWriteResult;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import telran.students.dto.Mark;
+import telran.students.model.MarkFields;
+import telran.students.model.MarksBucketDoc;
+import telran.students.model.StudentDoc;
+
+//rewrites the marks written before the compact format or before the subjects dictionary (MarkConverters)
+//runs before the other startup tasks, since the statistics and the queries use the compact field names
+@Component
+@Slf4j
+@RequiredArgsConstructor
+public class MarksFormatMigration {
+	final MongoTemplate mongoTemplate;
+	@Value("${app.students.marks.format-migration-on-startup:true}")
+	boolean migrateOnStartup;
+	@Value("${app.students.bulk.batch-size:1000}")
+	int batchSize;
+
+	@EventListener(ApplicationReadyEvent.class)
+	@Order(StartupOrder.FORMAT_MIGRATION)
+	public void migrateOnStartup() {
+		if (migrateOnStartup) {
+			migrate();
+		}
+	}
+
+	public long migrate() {
+		long nDocuments = migrate(mongoTemplate.getCollectionName(StudentDoc.class))
+				+ migrate(MarksBucketDoc.COLLECTION);
+		log.info("marks of {} documents are converted to the compact format", nDocuments);
+		return nDocuments;
+	}
+
+	private long migrate(String collection) {
+		//the raw documents are read, so the migration doesn't depend on the mapping of the entities
+		Query query = legacyMarksQuery(new Criteria());
+		query.cursorBatchSize(batchSize);
+		long nDocuments = 0;
+		List<Document> batch = new ArrayList<>(batchSize);
+		try (Stream<Document> documents = mongoTemplate.stream(query, Document.class, collection)) {
+			for (Document document : (Iterable<Document>) documents::iterator) {
+				batch.add(document);
+				if (batch.size() == batchSize) {
+					nDocuments += update(collection, batch);
+				}
+			}
+		}
+		return nDocuments + update(collection, batch);
+	}
+
+	private int update(String collection, List<Document> batch) {
+		//the service may write the marks meanwhile, so a document is updated only if its marks are as read
+		//(the same version and number of marks); the missed documents are read again and updated
+		int res = 0;
+		while (!batch.isEmpty()) {
+			BulkOperations bulkOperations = mongoTemplate.bulkOps(BulkMode.UNORDERED, collection);
+			batch.forEach(document -> {
+				List<Document> marks = document.getList("marks", Document.class);
+				bulkOperations.updateOne(new Query(Criteria.where("_id").is(document.get("_id"))
+						.and("version").is(document.get("version")).and("marks").size(marks.size())),
+						new Update().set("marks", marks.stream().map(this::convert).toList()));
+			});
+			BulkWriteResult result = bulkOperations.execute();
+			res += result.getModifiedCount();
+			List<Document> missed = List.of();
+			if (result.getMatchedCount() < batch.size()) {
+				List<Object> ids = batch.stream().map(document -> document.get("_id")).toList();
+				missed = mongoTemplate.find(legacyMarksQuery(Criteria.where("_id").in(ids)), Document.class, collection);
+			}
+			batch.clear();
+			batch.addAll(missed);
+		}
+		return res;
+	}
+
+	private static Query legacyMarksQuery(Criteria criteria) {
+		Query query = new Query(new Criteria().andOperator(criteria, new Criteria().orOperator(
+				Criteria.where(MarkFields.marks(MarkFields.LEGACY_SCORE)).exists(true),
+				Criteria.where(MarkFields.marks(MarkFields.SUBJECT)).type(Type.STRING))));
+		query.fields().include("version", "marks");
+		return query;
+	}
+
+	private Object convert(Document mark) {
+		//the reading converter accepts any format, the writing one writes the current format
+		MongoConverter converter = mongoTemplate.getConverter();
+		return converter.convertToMongoType(converter.read(Mark.class, mark));
+	}
+}
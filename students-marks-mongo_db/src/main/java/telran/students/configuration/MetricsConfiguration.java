@@ -0,0 +1,42 @@
+package telran.students.configuration;
+
+import java.util.Optional;
+
+import org.bson.BsonDocument;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.mongo.MongoClientSettingsBuilderCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import io.micrometer.core.aop.TimedAspect;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.mongodb.DefaultMongoCommandTagsProvider;
+import io.micrometer.core.instrument.binder.mongodb.MongoCommandTagsProvider;
+
+//the timers of the driver commands and the gauges of the connection pools are configured by Spring Boot
+//(mongodb.driver.commands, mongodb.driver.pool.*)
+@Configuration
+public class MetricsConfiguration {
+	@Bean
+	TimedAspect getTimedAspect(MeterRegistry meterRegistry) {
+		return new TimedAspect(meterRegistry);
+	}
+
+	@Bean
+	MongoClientSettingsBuilderCustomizer getMongoCommandMetricsCustomizer(MeterRegistry meterRegistry,
+			@Value("${app.metrics.mongo.measure-bytes:false}") boolean measureBytes) {
+		return builder -> builder.addCommandListener(new MongoCommandMetricsListener(meterRegistry, measureBytes));
+	}
+
+	//the collection tag of the driver timers is limited as of MongoCommandMetricsListener
+	@Bean
+	MongoCommandTagsProvider getMongoCommandTagsProvider() {
+		return new DefaultMongoCommandTagsProvider() {
+			@Override
+			protected Optional<String> determineCollectionName(String commandName, BsonDocument command) {
+				return super.determineCollectionName(commandName, command)
+						.map(MongoCommandMetricsListener::collectionTag);
+			}
+		};
+	}
+}
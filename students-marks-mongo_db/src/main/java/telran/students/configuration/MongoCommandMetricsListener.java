@@ -0,0 +1,121 @@
+package telran.students.configuration;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.bson.BsonDocument;
+import org.bson.BsonValue;
+import org.bson.RawBsonDocument;
+import org.bson.codecs.BsonDocumentCodec;
+
+import com.mongodb.event.CommandFailedEvent;
+import com.mongodb.event.CommandListener;
+import com.mongodb.event.CommandStartedEvent;
+import com.mongodb.event.CommandSucceededEvent;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import telran.students.model.MarksBucketDoc;
+import telran.students.service.AvgScoresView;
+import telran.students.service.ChangeStreamProjector;
+import telran.students.service.SubjectsDictionary;
+
+//numbers of documents and (optionally) bytes per command and collection
+//latencies of the commands are recorded by the mongodb.driver.commands timer of Spring Boot
+//the meters are registered once per name, command and collection and cached, the events only record
+public class MongoCommandMetricsListener implements CommandListener {
+	private record MeterKey(String name, String command, String collection) {
+	}
+
+	private static final BsonDocumentCodec CODEC = new BsonDocumentCodec();
+	private static final String NO_COLLECTION = "none";
+	//the collection tag is limited to the collections of the application,
+	//so the temporary collections ($out, $merge) don't add meters
+	private static final Set<String> KNOWN_COLLECTIONS = Set.of("students", MarksBucketDoc.COLLECTION,
+			AvgScoresView.COLLECTION, SubjectsDictionary.COLLECTION, ChangeStreamProjector.TOKENS_COLLECTION);
+	private static final String OTHER_COLLECTION = "other";
+	private final MeterRegistry meterRegistry;
+	//measuring of bytes requires encoding of the command and of the response
+	private final boolean measureBytes;
+	private final Map<Integer, String> requestsCollections = new ConcurrentHashMap<>();
+	private final Map<MeterKey, DistributionSummary> summaries = new ConcurrentHashMap<>();
+
+	public MongoCommandMetricsListener(MeterRegistry meterRegistry, boolean measureBytes) {
+		this.meterRegistry = meterRegistry;
+		this.measureBytes = measureBytes;
+	}
+
+	@Override
+	public void commandStarted(CommandStartedEvent event) {
+		String collection = getCollection(event.getCommandName(), event.getCommand());
+		requestsCollections.put(event.getRequestId(), collection);
+		if (measureBytes) {
+			summary("mongodb.command.request.bytes", event.getCommandName(), collection)
+				.record(getSize(event.getCommand()));
+		}
+	}
+
+	@Override
+	public void commandSucceeded(CommandSucceededEvent event) {
+		String collection = requestsCollections.remove(event.getRequestId());
+		if (collection == null) {
+			collection = NO_COLLECTION;
+		}
+		BsonDocument response = event.getResponse();
+		int nDocuments = getDocumentsCount(response);
+		if (nDocuments >= 0) {
+			summary("mongodb.command.documents", event.getCommandName(), collection).record(nDocuments);
+		}
+		if (measureBytes) {
+			summary("mongodb.command.response.bytes", event.getCommandName(), collection).record(getSize(response));
+		}
+	}
+
+	@Override
+	public void commandFailed(CommandFailedEvent event) {
+		requestsCollections.remove(event.getRequestId());
+	}
+
+	private DistributionSummary summary(String name, String command, String collection) {
+		return summaries.computeIfAbsent(new MeterKey(name, command, collection),
+				key -> DistributionSummary.builder(key.name())
+					.baseUnit(key.name().endsWith("bytes") ? "bytes" : "documents")
+					.tag("command", key.command())
+					.tag("collection", key.collection())
+					.register(meterRegistry));
+	}
+
+	private static String getCollection(String commandName, BsonDocument command) {
+		//the collection is the value of the command name field ({find: "students", ...}),
+		//getMore has the collection in the separate field
+		BsonValue value = command.get("getMore".equals(commandName) ? "collection" : commandName);
+		return value != null && value.isString() ? collectionTag(value.asString().getValue()) : NO_COLLECTION;
+	}
+
+	static String collectionTag(String collection) {
+		return KNOWN_COLLECTIONS.contains(collection) ? collection : OTHER_COLLECTION;
+	}
+
+	private static int getDocumentsCount(BsonDocument response) {
+		int res = -1;
+		if (response == null) {
+			res = -1;
+		} else if (response.isDocument("cursor")) {
+			BsonDocument cursor = response.getDocument("cursor");
+			String batch = cursor.containsKey("firstBatch") ? "firstBatch" : "nextBatch";
+			res = cursor.isArray(batch) ? cursor.getArray(batch).size() : -1;
+		} else if (response.isNumber("n")) {
+			res = response.getNumber("n").intValue();
+		} else if (response.containsKey("value")) {
+			//findAndModify
+			res = response.get("value").isNull() ? 0 : 1;
+		}
+		return res;
+	}
+
+	private static int getSize(BsonDocument document) {
+		return document instanceof RawBsonDocument raw ? raw.getByteBuffer().remaining()
+				: new RawBsonDocument(document, CODEC).getByteBuffer().remaining();
+	}
+}
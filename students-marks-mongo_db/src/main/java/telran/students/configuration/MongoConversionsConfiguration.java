@@ -0,0 +1,17 @@
+package telran.students.configuration;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.mongodb.core.convert.MongoCustomConversions;
+
+import telran.students.service.SubjectsDictionary;
+
+//the conversions are used by both blocking and reactive templates
+@Configuration
+public class MongoConversionsConfiguration {
+	@Bean
+	MongoCustomConversions getMongoCustomConversions(SubjectsDictionary subjectsDictionary) {
+		return new MongoCustomConversions(
+				MarkConverters.getConverters(subjectsDictionary::getId, subjectsDictionary::getName));
+	}
+}
@@ -0,0 +1,95 @@
+package telran.students.configuration;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.MongoDatabaseFactory;
+import org.springframework.stereotype.Component;
+
+import com.mongodb.ClientSessionOptions;
+import com.mongodb.ReadPreference;
+import com.mongodb.client.ClientSession;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+//routing of the reads of the methods annotated by @AnalyticsRead (RoutingMongoTemplate applies it)
+//the reads go to the secondaries not staler than max-staleness-seconds (at least 90 by MongoDB);
+//with causal consistency they run in a session starting after the last write of the application,
+//so a secondary waits for the replication of the writes (read-your-writes).
+//other reads (point reads after writes) go to the primary
+@Component
+@Aspect
+@Slf4j
+public class ReadRouting {
+	private record Route(ReadPreference readPreference, ClientSession session) {
+	}
+
+	private final ThreadLocal<Route> routes = new ThreadLocal<>();
+	private final MongoDatabaseFactory dbFactory;
+	private final WriteTimesListener writeTimesListener;
+	@Getter
+	private final boolean enabled;
+	private final boolean causalConsistency;
+	private final ReadPreference readPreference;
+
+	public ReadRouting(MongoDatabaseFactory dbFactory, WriteTimesListener writeTimesListener,
+			@Value("${app.students.analytics.read-preference:secondaryPreferred}") String readPreferenceName,
+			@Value("${app.students.analytics.max-staleness-seconds:90}") long maxStalenessSeconds,
+			@Value("${app.students.analytics.causal-consistency:true}") boolean causalConsistency) {
+		this.dbFactory = dbFactory;
+		this.writeTimesListener = writeTimesListener;
+		this.causalConsistency = causalConsistency;
+		enabled = !ReadPreference.primary().getName().equalsIgnoreCase(readPreferenceName);
+		readPreference = enabled ? ReadPreference.valueOf(readPreferenceName, List.of(), maxStalenessSeconds,
+				TimeUnit.SECONDS) : ReadPreference.primary();
+		log.debug("analytics read preference {}, causal consistency {}", readPreference, causalConsistency);
+	}
+
+	@Around("@annotation(telran.students.service.AnalyticsRead)")
+	public Object route(ProceedingJoinPoint joinPoint) throws Throwable {
+		Object res = null;
+		if (!enabled || routes.get() != null) {
+			res = joinPoint.proceed();
+		} else {
+			ClientSession session = causalConsistency ? startSession() : null;
+			routes.set(new Route(readPreference, session));
+			try {
+				res = joinPoint.proceed();
+			} finally {
+				routes.remove();
+				if (session != null) {
+					session.close();
+				}
+			}
+		}
+		return res;
+	}
+
+	private ClientSession startSession() {
+		ClientSession session = dbFactory.getSession(ClientSessionOptions.builder().causallyConsistent(true).build());
+		if (writeTimesListener.getClusterTime() != null) {
+			session.advanceClusterTime(writeTimesListener.getClusterTime());
+		}
+		if (writeTimesListener.getOperationTime() != null) {
+			session.advanceOperationTime(writeTimesListener.getOperationTime());
+		}
+		return session;
+	}
+
+	//null outside of the analytics reads
+	public ReadPreference getReadPreference() {
+		Route route = routes.get();
+		return route == null ? null : route.readPreference();
+	}
+
+	//null outside of the analytics reads or without causal consistency
+	public ClientSession getSession() {
+		Route route = routes.get();
+		return route == null ? null : route.session();
+	}
+}
@@ -0,0 +1,28 @@
+package telran.students.configuration;
+
+import org.springframework.boot.autoconfigure.mongo.MongoClientSettingsBuilderCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.mongodb.MongoDatabaseFactory;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.convert.MongoConverter;
+
+//replaces the MongoTemplate of Spring Boot, the repositories use it by the name mongoTemplate
+@Configuration
+public class ReadRoutingConfiguration {
+	@Bean
+	WriteTimesListener getWriteTimesListener() {
+		return new WriteTimesListener();
+	}
+
+	@Bean
+	MongoClientSettingsBuilderCustomizer getWriteTimesCustomizer(WriteTimesListener writeTimesListener) {
+		return builder -> builder.addCommandListener(writeTimesListener);
+	}
+
+	@Bean("mongoTemplate")
+	MongoTemplate getMongoTemplate(MongoDatabaseFactory dbFactory, MongoConverter mongoConverter,
+			ReadRouting readRouting) {
+		return new RoutingMongoTemplate(dbFactory, mongoConverter, readRouting);
+	}
+}
@@ -0,0 +1,36 @@
+package telran.students.configuration;
+
+import org.bson.Document;
+import org.springframework.data.mongodb.MongoDatabaseFactory;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.convert.MongoConverter;
+
+import com.mongodb.ReadPreference;
+import com.mongodb.client.ClientSession;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoDatabase;
+
+//applies the read preference and the session of ReadRouting inside the analytics reads,
+//elsewhere it is the regular template (including the transactions of MongoTransactionManager)
+public class RoutingMongoTemplate extends MongoTemplate {
+	private final ReadRouting readRouting;
+
+	public RoutingMongoTemplate(MongoDatabaseFactory dbFactory, MongoConverter mongoConverter,
+			ReadRouting readRouting) {
+		super(dbFactory, mongoConverter);
+		this.readRouting = readRouting;
+	}
+
+	@Override
+	protected MongoDatabase doGetDatabase() {
+		ClientSession session = readRouting.getSession();
+		return session == null ? super.doGetDatabase() : getMongoDatabaseFactory().withSession(session).getMongoDatabase();
+	}
+
+	@Override
+	protected MongoCollection<Document> prepareCollection(MongoCollection<Document> collection) {
+		ReadPreference readPreference = readRouting.getReadPreference();
+		MongoCollection<Document> res = super.prepareCollection(collection);
+		return readPreference == null ? res : res.withReadPreference(readPreference);
+	}
+}
@@ -0,0 +1,19 @@
+package telran.students.configuration;
+
+import org.springframework.core.Ordered;
+
+//order of the ApplicationReadyEvent listeners (the indexes are ensured before them, IndexesManager):
+//the marks are converted first, the statistics are computed from the converted embedded marks,
+//the marks are moved to buckets keeping the statistics,
+//the change stream is opened, so the writes during the loading of the views reach them after it,
+//the views (average scores, leaderboards, columnar snapshot) are loaded from the statistics
+public final class StartupOrder {
+	public static final int FORMAT_MIGRATION = Ordered.HIGHEST_PRECEDENCE;
+	public static final int STATS_BACKFILL = FORMAT_MIGRATION + 1;
+	public static final int BUCKETS_MIGRATION = STATS_BACKFILL + 1;
+	public static final int CHANGE_STREAM = BUCKETS_MIGRATION + 1;
+	public static final int VIEWS = CHANGE_STREAM + 1;
+
+	private StartupOrder() {
+	}
+}
@@ -0,0 +1,41 @@
+package telran.students.configuration;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.annotation.Order;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Component;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import telran.students.model.StudentDoc;
+import telran.students.service.MarksUpdates;
+
+//computes marks statistics for the documents written before the statistics were introduced
+@Component
+@Slf4j
+@RequiredArgsConstructor
+public class StatsBackfill {
+	final MongoTemplate mongoTemplate;
+	final MarksUpdates marksUpdates;
+	@Value("${app.students.stats.backfill-on-startup:true}")
+	boolean backfillOnStartup;
+
+	@EventListener(ApplicationReadyEvent.class)
+	@Order(StartupOrder.STATS_BACKFILL)
+	public void backfillOnStartup() {
+		if (backfillOnStartup) {
+			backfill();
+		}
+	}
+
+	public long backfill() {
+		long nUpdated = mongoTemplate.updateMulti(new Query(Criteria.where("marksCount").exists(false)),
+				marksUpdates.computeStats(), StudentDoc.class).getModifiedCount();
+		log.info("marks statistics are computed for {} students", nUpdated);
+		return nUpdated;
+	}
+}
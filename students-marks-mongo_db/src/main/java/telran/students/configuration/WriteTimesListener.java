@@ -0,0 +1,47 @@
+package telran.students.configuration;
+
+import java.util.Set;
+
+import org.bson.BsonDocument;
+import org.bson.BsonTimestamp;
+import org.bson.BsonValue;
+
+import com.mongodb.event.CommandListener;
+import com.mongodb.event.CommandSucceededEvent;
+
+//latest operation time and cluster time of the writes performed by the application,
+//the causally consistent sessions of the analytics reads start after them
+public class WriteTimesListener implements CommandListener {
+	private static final Set<String> WRITE_COMMANDS = Set.of("insert", "update", "delete", "findAndModify");
+	private BsonTimestamp operationTime;
+	private BsonDocument clusterTime;
+
+	@Override
+	public void commandSucceeded(CommandSucceededEvent event) {
+		if (WRITE_COMMANDS.contains(event.getCommandName())) {
+			BsonDocument response = event.getResponse();
+			BsonValue time = response.get("operationTime");
+			BsonValue cluster = response.get("$clusterTime");
+			if (time != null && time.isTimestamp()) {
+				advance(time.asTimestamp(), cluster != null && cluster.isDocument() ? cluster.asDocument() : null);
+			}
+		}
+	}
+
+	private synchronized void advance(BsonTimestamp time, BsonDocument cluster) {
+		if (operationTime == null || time.compareTo(operationTime) > 0) {
+			operationTime = time;
+			if (cluster != null) {
+				clusterTime = cluster;
+			}
+		}
+	}
+
+	public synchronized BsonTimestamp getOperationTime() {
+		return operationTime;
+	}
+
+	public synchronized BsonDocument getClusterTime() {
+		return clusterTime;
+	}
+}
@@ -0,0 +1,10 @@
+package telran.students.dto;
+
+import java.time.Instant;
+import java.util.List;
+
+//students from the materialized view: the view reflects the data at refreshedAt
+//and doesn't reflect yet the marks of nPendingStudents students
+public record AvgScoreReport(List<NameAvgScore> students, Instant refreshedAt, int nPendingStudents) {
+
+}
@@ -0,0 +1,8 @@
+package telran.students.dto;
+
+//reason is given by the error code of the database, message is for the client
+public record BulkItemError(long id, Reason reason, String message) {
+	public enum Reason {
+		DUPLICATE_ID, DUPLICATE_PHONE, NOT_FOUND, OTHER
+	}
+}
@@ -0,0 +1,7 @@
+package telran.students.dto;
+
+import java.util.List;
+
+public record BulkResult(int nSucceeded, List<BulkItemError> errors) {
+
+}
@@ -0,0 +1,6 @@
+package telran.students.dto;
+
+//number of scores fromScore <= score < toScore
+public record ScoreBin(int fromScore, int toScore, long count) {
+
+}
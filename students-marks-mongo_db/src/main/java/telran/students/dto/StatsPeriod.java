@@ -0,0 +1,6 @@
+package telran.students.dto;
+
+//date buckets of the marks statistics, a week starts on Monday
+public enum StatsPeriod {
+	DAY, WEEK, MONTH, YEAR
+}
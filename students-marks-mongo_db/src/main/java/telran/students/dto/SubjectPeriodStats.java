@@ -0,0 +1,11 @@
+package telran.students.dto;
+
+import java.time.LocalDate;
+import java.util.List;
+
+//statistics of the scores of a subject in the period starting at periodStart,
+//histogram has only non-empty bins sorted by score
+public record SubjectPeriodStats(String subject, LocalDate periodStart, long count, double avgScore,
+		int minScore, int maxScore, List<ScoreBin> histogram) {
+
+}
@@ -0,0 +1,61 @@
+package telran.students.export;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+
+//UTF-8 text encoded directly into one reusable buffer, which is written to the channel when full
+class ChannelTextWriter implements Closeable {
+	private final WritableByteChannel channel;
+	private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder();
+	private final ByteBuffer buffer;
+	private long nBytes;
+
+	ChannelTextWriter(WritableByteChannel channel, int bufferSize) {
+		this.channel = channel;
+		buffer = ByteBuffer.allocateDirect(bufferSize);
+	}
+
+	//the text should be complete (no surrogate pair split between the calls)
+	void write(CharSequence text) throws IOException {
+		CharBuffer chars = CharBuffer.wrap(text);
+		CoderResult result = encoder.encode(chars, buffer, true);
+		while (result.isOverflow()) {
+			drain();
+			result = encoder.encode(chars, buffer, true);
+		}
+		if (result.isError()) {
+			result.throwException();
+		}
+		while (encoder.flush(buffer).isOverflow()) {
+			drain();
+		}
+		encoder.reset();
+	}
+
+	long getBytes() {
+		return nBytes + buffer.position();
+	}
+
+	private void drain() throws IOException {
+		buffer.flip();
+		while (buffer.hasRemaining()) {
+			nBytes += channel.write(buffer);
+		}
+		buffer.clear();
+	}
+
+	@Override
+	public void close() throws IOException {
+		try {
+			drain();
+		} finally {
+			channel.close();
+		}
+	}
+}
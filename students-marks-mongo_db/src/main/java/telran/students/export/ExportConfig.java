@@ -0,0 +1,22 @@
+package telran.students.export;
+
+import java.util.function.Consumer;
+
+import lombok.Builder;
+
+@Builder(toBuilder = true)
+public record ExportConfig(ExportFormat format, boolean gzip, int batchSize, int bufferSize, int progressInterval,
+		Consumer<ExportResult> progressListener) {
+	//default values
+	public static class ExportConfigBuilder {
+		private ExportFormat format = ExportFormat.NDJSON;
+		private boolean gzip = false;
+		//students per getMore of the server cursor
+		private int batchSize = 1000;
+		//bytes of the output buffer
+		private int bufferSize = 64 * 1024;
+		//number of students between progress reports
+		private int progressInterval = 100_000;
+		private Consumer<ExportResult> progressListener = result -> {};
+	}
+}
@@ -0,0 +1,7 @@
+package telran.students.export;
+
+//CSV: header and one row per mark (a student without marks has one row with empty mark columns)
+//NDJSON: one JSON object per student with the array of the marks
+public enum ExportFormat {
+	CSV, NDJSON
+}
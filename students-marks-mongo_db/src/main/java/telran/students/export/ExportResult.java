@@ -0,0 +1,12 @@
+package telran.students.export;
+
+//nBytes is the size of the text before compression
+public record ExportResult(long nStudents, long nMarks, long nBytes, long millis) {
+	public long studentsPerSecond() {
+		return nStudents * 1000 / Math.max(millis, 1);
+	}
+
+	public double megabytesPerSecond() {
+		return nBytes * 1000.0 / Math.max(millis, 1) / (1024 * 1024);
+	}
+}
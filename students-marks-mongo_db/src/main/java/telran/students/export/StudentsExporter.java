@@ -0,0 +1,178 @@
+package telran.students.export;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
+
+import org.springframework.data.domain.Sort;
+import org.springframework.data.domain.Sort.Direction;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Component;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import telran.students.dto.Mark;
+import telran.students.model.StudentDoc;
+import telran.students.service.AnalyticsRead;
+import telran.students.service.MarksBuckets;
+
+//streaming dump of the students with their marks
+//the documents are read through a server cursor batch by batch and the text is encoded into one reusable buffer,
+//so only one batch of students is held in memory regardless of the collection size
+@Component
+@Slf4j
+@RequiredArgsConstructor
+public class StudentsExporter {
+	static final String CSV_HEADER = "id,name,phone,subject,date,score\n";
+	final MongoTemplate mongoTemplate;
+	final MarksBuckets marksBuckets;
+
+	@AnalyticsRead
+	public ExportResult export(Path path, ExportConfig config) {
+		try {
+			return export(FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+					StandardOpenOption.TRUNCATE_EXISTING), config);
+		} catch (IOException e) {
+			throw new UncheckedIOException("export to %s failed".formatted(path), e);
+		}
+	}
+
+	//the channel is closed after the export
+	@AnalyticsRead
+	public ExportResult export(WritableByteChannel channel, ExportConfig config) {
+		long start = System.currentTimeMillis();
+		long nStudents = 0;
+		long nMarks = 0;
+		StringBuilder text = new StringBuilder();
+		try (ChannelTextWriter writer = new ChannelTextWriter(config.gzip() ? gzip(channel, config.bufferSize())
+				: channel, config.bufferSize());
+				Stream<StudentDoc> studentDocs = mongoTemplate.stream(getQuery(config), StudentDoc.class)) {
+			if (config.format() == ExportFormat.CSV) {
+				writer.write(CSV_HEADER);
+			}
+			for (StudentDoc studentDoc : (Iterable<StudentDoc>) studentDocs::iterator) {
+				List<Mark> marks = marksBuckets.isEnabled() ? marksBuckets.getMarks(studentDoc.getId())
+						: studentDoc.getMarks();
+				text.setLength(0);
+				if (config.format() == ExportFormat.CSV) {
+					appendCsv(text, studentDoc, marks);
+				} else {
+					appendJson(text, studentDoc, marks);
+				}
+				writer.write(text);
+				nStudents++;
+				nMarks += marks == null ? 0 : marks.size();
+				if (config.progressInterval() > 0 && nStudents % config.progressInterval() == 0) {
+					ExportResult progress = new ExportResult(nStudents, nMarks, writer.getBytes(),
+							System.currentTimeMillis() - start);
+					log.debug("exported {} students, {} marks ({} students per second)", nStudents, nMarks,
+							progress.studentsPerSecond());
+					config.progressListener().accept(progress);
+				}
+			}
+			writer.close();
+			ExportResult res = new ExportResult(nStudents, nMarks, writer.getBytes(),
+					System.currentTimeMillis() - start);
+			log.info("exported {} students, {} marks, {} bytes in {} ms ({} students per second, {} MB per second)",
+					nStudents, nMarks, res.nBytes(), res.millis(), res.studentsPerSecond(),
+					"%.1f".formatted(res.megabytesPerSecond()));
+			return res;
+		} catch (IOException e) {
+			throw new UncheckedIOException("students export failed", e);
+		}
+	}
+
+	private Query getQuery(ExportConfig config) {
+		Query query = new Query().with(Sort.by(Direction.ASC, "id")).cursorBatchSize(config.batchSize());
+		query.fields().include("id", "name", "phone");
+		if (!marksBuckets.isEnabled()) {
+			query.fields().include("marks");
+		}
+		return query;
+	}
+
+	private WritableByteChannel gzip(WritableByteChannel channel, int bufferSize) throws IOException {
+		return Channels.newChannel(new GZIPOutputStream(Channels.newOutputStream(channel), bufferSize));
+	}
+
+	static void appendCsv(StringBuilder text, StudentDoc studentDoc, List<Mark> marks) {
+		if (marks == null || marks.isEmpty()) {
+			appendCsvStudent(text, studentDoc);
+			text.append(",,\n");
+		} else {
+			for (Mark mark : marks) {
+				appendCsvStudent(text, studentDoc);
+				appendCsvValue(text, mark.subject()).append(',').append(mark.date()).append(',')
+					.append(mark.score()).append('\n');
+			}
+		}
+	}
+
+	private static void appendCsvStudent(StringBuilder text, StudentDoc studentDoc) {
+		text.append(studentDoc.getId()).append(',');
+		appendCsvValue(text, studentDoc.getName()).append(',');
+		appendCsvValue(text, studentDoc.getPhone()).append(',');
+	}
+
+	static StringBuilder appendCsvValue(StringBuilder text, String value) {
+		if (value != null) {
+			if (value.chars().anyMatch(c -> c == ',' || c == '"' || c == '\n' || c == '\r')) {
+				text.append('"').append(value.replace("\"", "\"\"")).append('"');
+			} else {
+				text.append(value);
+			}
+		}
+		return text;
+	}
+
+	static void appendJson(StringBuilder text, StudentDoc studentDoc, List<Mark> marks) {
+		text.append("{\"id\":").append(studentDoc.getId()).append(",\"name\":");
+		appendJsonValue(text, studentDoc.getName()).append(",\"phone\":");
+		appendJsonValue(text, studentDoc.getPhone()).append(",\"marks\":[");
+		if (marks != null) {
+			for (int i = 0; i < marks.size(); i++) {
+				Mark mark = marks.get(i);
+				if (i > 0) {
+					text.append(',');
+				}
+				text.append("{\"subject\":");
+				appendJsonValue(text, mark.subject()).append(",\"date\":\"").append(mark.date())
+					.append("\",\"score\":").append(mark.score()).append('}');
+			}
+		}
+		text.append("]}\n");
+	}
+
+	static StringBuilder appendJsonValue(StringBuilder text, String value) {
+		if (value == null) {
+			return text.append("null");
+		}
+		text.append('"');
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			switch (c) {
+			case '"' -> text.append("\\\"");
+			case '\\' -> text.append("\\\\");
+			case '\n' -> text.append("\\n");
+			case '\r' -> text.append("\\r");
+			case '\t' -> text.append("\\t");
+			default -> {
+				if (c < 0x20) {
+					text.append("\\u%04x".formatted((int) c));
+				} else {
+					text.append(c);
+				}
+			}
+			}
+		}
+		return text.append('"');
+	}
+}
@@ -0,0 +1,23 @@
+package telran.students.generator;
+
+import java.time.LocalDate;
+
+import lombok.Builder;
+
+@Builder(toBuilder = true)
+public record GeneratorConfig(long seed, int nStudents, MarksDistribution marksDistribution, int meanMarks,
+		int maxMarks, int nSubjects, LocalDate fromDate, LocalDate toDate, int batchSize, int parallelism) {
+	//default values
+	public static class GeneratorConfigBuilder {
+		private long seed = 1;
+		private int nStudents = 1000;
+		private MarksDistribution marksDistribution = MarksDistribution.UNIFORM;
+		private int meanMarks = 20;
+		private int maxMarks = 10_000;
+		private int nSubjects = 10;
+		private LocalDate fromDate = LocalDate.parse("2023-09-01");
+		private LocalDate toDate = LocalDate.parse("2024-06-30");
+		private int batchSize = 1000;
+		private int parallelism = Runtime.getRuntime().availableProcessors();
+	}
+}
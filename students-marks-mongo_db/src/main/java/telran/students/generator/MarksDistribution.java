@@ -0,0 +1,40 @@
+package telran.students.generator;
+
+import java.util.SplittableRandom;
+
+//distributions of the number of marks per student with a given mean, capped by a given maximum
+public enum MarksDistribution {
+	//every student has the mean number of marks
+	CONSTANT {
+		@Override
+		int nextCount(SplittableRandom random, int mean, int max) {
+			return Math.min(mean, max);
+		}
+	},
+	//uniform in [0, 2 * mean]
+	UNIFORM {
+		@Override
+		int nextCount(SplittableRandom random, int mean, int max) {
+			return Math.min(random.nextInt(2 * mean + 1), max);
+		}
+	},
+	//exponential: most students have few marks, some have several times the mean
+	SKEWED {
+		@Override
+		int nextCount(SplittableRandom random, int mean, int max) {
+			return (int) Math.min(-mean * Math.log(1 - random.nextDouble()), max);
+		}
+	},
+	//Pareto with alpha 1.5: a small number of students have orders of magnitude more marks than the mean
+	HEAVY_TAIL {
+		private static final double ALPHA = 1.5;
+
+		@Override
+		int nextCount(SplittableRandom random, int mean, int max) {
+			double minValue = mean * (ALPHA - 1) / ALPHA;
+			return (int) Math.min(minValue / Math.pow(1 - random.nextDouble(), 1 / ALPHA), max);
+		}
+	};
+
+	abstract int nextCount(SplittableRandom random, int mean, int max);
+}
@@ -0,0 +1,98 @@
+package telran.students.generator;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.springframework.data.mongodb.core.BulkOperations.BulkMode;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.stereotype.Component;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import telran.students.dto.Mark;
+import telran.students.dto.Student;
+import telran.students.model.StudentDoc;
+
+//synthetic students with ids 1..nStudents written by parallel unordered bulk inserts
+//the data of a student depends only on the seed and the id, so it doesn't depend on parallelism and batch size
+//the data is written directly to the collection: derived views (cache, average scores, leaderboards) should be rebuilt after that
+@Component
+@Slf4j
+@RequiredArgsConstructor
+public class StudentsDataGenerator {
+	private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+	final MongoTemplate mongoTemplate;
+
+	public long generate(GeneratorConfig config) {
+		long start = System.currentTimeMillis();
+		ExecutorService executor = Executors.newFixedThreadPool(config.parallelism());
+		List<Future<Long>> futures = new ArrayList<>();
+		for (long from = 1; from <= config.nStudents(); from += config.batchSize()) {
+			long batchFrom = from;
+			long batchTo = Math.min(from + config.batchSize() - 1, config.nStudents());
+			futures.add(executor.submit(() -> insertBatch(config, batchFrom, batchTo)));
+		}
+		long nMarks = 0;
+		try {
+			for (Future<Long> future : futures) {
+				nMarks += future.get();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("students generation is interrupted", e);
+		} catch (ExecutionException e) {
+			throw new IllegalStateException("students generation failed", e.getCause());
+		} finally {
+			executor.shutdownNow();
+		}
+		long time = Math.max(System.currentTimeMillis() - start, 1);
+		log.info("generated {} students, {} marks in {} ms ({} students per second)", config.nStudents(), nMarks,
+				time, config.nStudents() * 1000L / time);
+		return nMarks;
+	}
+
+	private long insertBatch(GeneratorConfig config, long from, long to) {
+		List<StudentDoc> studentDocs = new ArrayList<>((int) (to - from + 1));
+		long nMarks = 0;
+		for (long id = from; id <= to; id++) {
+			StudentDoc studentDoc = StudentDoc.of(getStudent(id));
+			List<Mark> marks = getMarks(config, id);
+			marks.forEach(studentDoc::addMark);
+			nMarks += marks.size();
+			studentDocs.add(studentDoc);
+		}
+		mongoTemplate.bulkOps(BulkMode.UNORDERED, StudentDoc.class).insert(studentDocs).execute();
+		log.trace("inserted students {} - {}", from, to);
+		return nMarks;
+	}
+
+	public static Student getStudent(long id) {
+		return new Student(id, "name" + id, getPhone(id));
+	}
+
+	public static String getPhone(long id) {
+		return String.format("05%d-%07d", id % 10, id);
+	}
+
+	public static String getSubject(int index) {
+		return "subject" + index;
+	}
+
+	public static List<Mark> getMarks(GeneratorConfig config, long id) {
+		SplittableRandom random = new SplittableRandom(config.seed() ^ (id * GOLDEN_GAMMA));
+		int nMarks = config.marksDistribution().nextCount(random, config.meanMarks(), config.maxMarks());
+		int nDays = (int) (config.toDate().toEpochDay() - config.fromDate().toEpochDay()) + 1;
+		List<Mark> marks = new ArrayList<>(nMarks);
+		for (int i = 0; i < nMarks; i++) {
+			LocalDate date = config.fromDate().plusDays(random.nextInt(nDays));
+			marks.add(new Mark(getSubject(random.nextInt(config.nSubjects())), date, 50 + random.nextInt(51)));
+		}
+		return marks;
+	}
+}
@@ -0,0 +1,5 @@
+package telran.students.importer;
+
+//[from, to) of the file, both are starts of lines
+record Chunk(int index, long from, long to) {
+}
@@ -0,0 +1,432 @@
+package telran.students.importer;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import telran.students.dto.Mark;
+import telran.students.dto.Student;
+import telran.students.export.ExportFormat;
+
+//parses the rows of a chunk directly from its mapped buffer:
+//numbers and dates are parsed from the bytes, only the strings of a row are allocated
+//a row can't contain a line break (the exporter quotes it in CSV and escapes it in NDJSON)
+class ChunkParser {
+	private static final byte[] CSV_HEADER = "id,name,phone,subject,date,score".getBytes(StandardCharsets.US_ASCII);
+	private static final byte[] KEY_ID = key("id");
+	private static final byte[] KEY_NAME = key("name");
+	private static final byte[] KEY_PHONE = key("phone");
+	private static final byte[] KEY_MARKS = key("marks");
+	private static final byte[] KEY_SUBJECT = key("subject");
+	private static final byte[] KEY_DATE = key("date");
+	private static final byte[] KEY_SCORE = key("score");
+	private static final byte[][] KEYS = { KEY_ID, KEY_NAME, KEY_PHONE, KEY_MARKS, KEY_SUBJECT, KEY_DATE, KEY_SCORE };
+	private static final byte[] NULL = key("null");
+	private final ByteBuffer buffer;
+	private final ExportFormat format;
+	private final boolean first;
+	private byte[] scratch = new byte[256];
+	private int lineStart;
+	private int pos;
+	private int end;
+
+	ChunkParser(ByteBuffer buffer, ExportFormat format, boolean first) {
+		this.buffer = buffer;
+		this.format = format;
+		this.first = first;
+	}
+
+	void parse(RowConsumer consumer) {
+		int limit = buffer.limit();
+		int start = 0;
+		while (start < limit) {
+			int lineEnd = start;
+			while (lineEnd < limit && buffer.get(lineEnd) != '\n') {
+				lineEnd++;
+			}
+			end = lineEnd > start && buffer.get(lineEnd - 1) == '\r' ? lineEnd - 1 : lineEnd;
+			lineStart = start;
+			pos = start;
+			if (end > start && !(first && start == 0 && isCsvHeader())) {
+				try {
+					if (format == ExportFormat.CSV) {
+						parseCsv(consumer, start);
+					} else {
+						parseJson(consumer, start);
+					}
+				} catch (IllegalArgumentException | DateTimeException e) {
+					consumer.reject(start, end, e.getMessage());
+				}
+			}
+			start = lineEnd + 1;
+		}
+	}
+
+	static String line(ByteBuffer buffer, int start, int end) {
+		byte[] bytes = new byte[end - start];
+		buffer.get(start, bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	private boolean isCsvHeader() {
+		return format == ExportFormat.CSV && end - pos == CSV_HEADER.length && matches(pos, CSV_HEADER);
+	}
+
+	//id,name,phone,subject,date,score - the mark columns are empty for a student without marks
+	private void parseCsv(RowConsumer consumer, int start) {
+		long id = number(field(), pos);
+		comma();
+		String name = csvString();
+		comma();
+		String phone = csvString();
+		comma();
+		List<Mark> marks = List.of();
+		if (pos < end && buffer.get(pos) != ',') {
+			String subject = csvString();
+			comma();
+			LocalDate date = date(field(), pos);
+			comma();
+			marks = List.of(new Mark(subject, date, (int) number(field(), pos)));
+		} else {
+			for (int i = 0; i < 2; i++) {
+				comma();
+				if (field() != pos) {
+					throw new IllegalArgumentException("mark without subject");
+				}
+			}
+		}
+		if (pos < end) {
+			throw new IllegalArgumentException("unexpected columns");
+		}
+		consumer.accept(new Student(id, name, phone), marks, start, end);
+	}
+
+	//start of the field, the position is moved to its end
+	private int field() {
+		int from = pos;
+		while (pos < end && buffer.get(pos) != ',') {
+			pos++;
+		}
+		return from;
+	}
+
+	private void comma() {
+		if (pos >= end || buffer.get(pos) != ',') {
+			throw new IllegalArgumentException("missing columns");
+		}
+		pos++;
+	}
+
+	private String csvString() {
+		int length = 0;
+		if (pos < end && buffer.get(pos) == '"') {
+			pos++;
+			while (true) {
+				if (pos >= end) {
+					throw new IllegalArgumentException("unclosed quote");
+				}
+				byte b = buffer.get(pos++);
+				if (b == '"') {
+					if (pos < end && buffer.get(pos) == '"') {
+						pos++;
+					} else {
+						break;
+					}
+				}
+				length = put(length, b);
+			}
+			if (pos < end && buffer.get(pos) != ',') {
+				throw new IllegalArgumentException("wrong quoted value");
+			}
+		} else {
+			while (pos < end && buffer.get(pos) != ',') {
+				length = put(length, buffer.get(pos++));
+			}
+		}
+		return new String(scratch, 0, length, StandardCharsets.UTF_8);
+	}
+
+	//{"id":1,"name":"...","phone":"...","marks":[{"subject":"...","date":"yyyy-MM-dd","score":90},...]}
+	//unknown fields are skipped
+	private void parseJson(RowConsumer consumer, int start) {
+		long id = -1;
+		String name = null;
+		String phone = null;
+		List<Mark> marks = new ArrayList<>();
+		expect('{');
+		if (!closing('}')) {
+			do {
+				byte[] key = jsonKey();
+				if (key == KEY_ID) {
+					id = jsonLong();
+				} else if (key == KEY_NAME) {
+					name = jsonString();
+				} else if (key == KEY_PHONE) {
+					phone = jsonString();
+				} else if (key == KEY_MARKS) {
+					jsonMarks(marks);
+				} else {
+					skipValue();
+				}
+			} while (next(',', '}'));
+		}
+		skipSpaces();
+		if (pos < end) {
+			throw new IllegalArgumentException("unexpected text after the object");
+		}
+		if (id < 0) {
+			throw new IllegalArgumentException("no id");
+		}
+		consumer.accept(new Student(id, name, phone), marks, start, end);
+	}
+
+	private void jsonMarks(List<Mark> marks) {
+		expect('[');
+		if (!closing(']')) {
+			do {
+				String subject = null;
+				LocalDate date = null;
+				int score = -1;
+				expect('{');
+				do {
+					byte[] key = jsonKey();
+					if (key == KEY_SUBJECT) {
+						subject = jsonString();
+					} else if (key == KEY_DATE) {
+						expect('"');
+						int from = pos;
+						while (pos < end && buffer.get(pos) != '"') {
+							pos++;
+						}
+						date = date(from, pos);
+						expect('"');
+					} else if (key == KEY_SCORE) {
+						score = (int) jsonLong();
+					} else {
+						skipValue();
+					}
+				} while (next(',', '}'));
+				if (subject == null || date == null || score < 0) {
+					throw new IllegalArgumentException("incomplete mark");
+				}
+				marks.add(new Mark(subject, date, score));
+			} while (next(',', ']'));
+		}
+	}
+
+	//one of the known keys or null
+	private byte[] jsonKey() {
+		expect('"');
+		int from = pos;
+		while (pos < end && buffer.get(pos) != '"') {
+			if (buffer.get(pos) == '\\') {
+				pos++;
+			}
+			pos++;
+		}
+		int length = pos - from;
+		expect('"');
+		expect(':');
+		byte[] res = null;
+		for (byte[] key : KEYS) {
+			if (key.length == length && matches(from, key)) {
+				res = key;
+				break;
+			}
+		}
+		return res;
+	}
+
+	private long jsonLong() {
+		skipSpaces();
+		int from = pos;
+		while (pos < end && buffer.get(pos) >= '0' && buffer.get(pos) <= '9') {
+			pos++;
+		}
+		return number(from, pos);
+	}
+
+	private String jsonString() {
+		skipSpaces();
+		if (matches(pos, NULL)) {
+			pos += NULL.length;
+			return null;
+		}
+		expect('"');
+		int length = 0;
+		while (true) {
+			if (pos >= end) {
+				throw new IllegalArgumentException("unclosed string");
+			}
+			byte b = buffer.get(pos++);
+			if (b == '"') {
+				break;
+			}
+			if (b == '\\') {
+				if (pos >= end) {
+					throw new IllegalArgumentException("unclosed string");
+				}
+				byte escaped = buffer.get(pos++);
+				switch (escaped) {
+				case 'n' -> length = put(length, (byte) '\n');
+				case 'r' -> length = put(length, (byte) '\r');
+				case 't' -> length = put(length, (byte) '\t');
+				case 'b' -> length = put(length, (byte) '\b');
+				case 'f' -> length = put(length, (byte) '\f');
+				case 'u' -> length = putCodePoint(length);
+				default -> length = put(length, escaped);
+				}
+			} else {
+				length = put(length, b);
+			}
+		}
+		return new String(scratch, 0, length, StandardCharsets.UTF_8);
+	}
+
+	private int putCodePoint(int length) {
+		int codePoint = hex4();
+		if (Character.isHighSurrogate((char) codePoint) && pos + 1 < end && buffer.get(pos) == '\\'
+				&& buffer.get(pos + 1) == 'u') {
+			pos += 2;
+			codePoint = Character.toCodePoint((char) codePoint, (char) hex4());
+		}
+		for (byte b : new String(Character.toChars(codePoint)).getBytes(StandardCharsets.UTF_8)) {
+			length = put(length, b);
+		}
+		return length;
+	}
+
+	private int hex4() {
+		if (pos + 4 > end) {
+			throw new IllegalArgumentException("wrong unicode escape");
+		}
+		int res = 0;
+		for (int i = 0; i < 4; i++) {
+			int digit = Character.digit(buffer.get(pos++), 16);
+			if (digit < 0) {
+				throw new IllegalArgumentException("wrong unicode escape");
+			}
+			res = res * 16 + digit;
+		}
+		return res;
+	}
+
+	private void skipValue() {
+		skipSpaces();
+		if (pos >= end) {
+			throw new IllegalArgumentException("no value");
+		}
+		byte b = buffer.get(pos);
+		if (b == '"') {
+			jsonString();
+		} else if (b == '{' || b == '[') {
+			int depth = 0;
+			boolean inString = false;
+			do {
+				if (pos >= end) {
+					throw new IllegalArgumentException("unclosed value");
+				}
+				b = buffer.get(pos++);
+				if (inString) {
+					if (b == '\\') {
+						pos++;
+					} else if (b == '"') {
+						inString = false;
+					}
+				} else if (b == '"') {
+					inString = true;
+				} else if (b == '{' || b == '[') {
+					depth++;
+				} else if (b == '}' || b == ']') {
+					depth--;
+				}
+			} while (depth > 0);
+		} else {
+			while (pos < end && buffer.get(pos) != ',' && buffer.get(pos) != '}' && buffer.get(pos) != ']') {
+				pos++;
+			}
+		}
+	}
+
+	//true if the separator follows, false if the closing bracket follows
+	private boolean next(char separator, char closing) {
+		skipSpaces();
+		if (pos < end && buffer.get(pos) == separator) {
+			pos++;
+			return true;
+		}
+		expect(closing);
+		return false;
+	}
+
+	private boolean closing(char c) {
+		skipSpaces();
+		boolean res = pos < end && buffer.get(pos) == c;
+		if (res) {
+			pos++;
+		}
+		return res;
+	}
+
+	private void expect(char c) {
+		skipSpaces();
+		if (pos >= end || buffer.get(pos) != c) {
+			throw new IllegalArgumentException("'%c' expected at column %d".formatted(c, pos - lineStart + 1));
+		}
+		pos++;
+	}
+
+	private void skipSpaces() {
+		while (pos < end && (buffer.get(pos) == ' ' || buffer.get(pos) == '\t')) {
+			pos++;
+		}
+	}
+
+	private long number(int from, int to) {
+		if (from == to || to - from > 18) {
+			throw new IllegalArgumentException("wrong number");
+		}
+		long res = 0;
+		for (int i = from; i < to; i++) {
+			byte b = buffer.get(i);
+			if (b < '0' || b > '9') {
+				throw new IllegalArgumentException("wrong number");
+			}
+			res = res * 10 + b - '0';
+		}
+		return res;
+	}
+
+	//yyyy-MM-dd
+	private LocalDate date(int from, int to) {
+		if (to - from != 10 || buffer.get(from + 4) != '-' || buffer.get(from + 7) != '-') {
+			throw new IllegalArgumentException("wrong date");
+		}
+		return LocalDate.of((int) number(from, from + 4), (int) number(from + 5, from + 7),
+				(int) number(from + 8, from + 10));
+	}
+
+	private boolean matches(int from, byte[] bytes) {
+		boolean res = from + bytes.length <= end;
+		for (int i = 0; res && i < bytes.length; i++) {
+			res = buffer.get(from + i) == bytes[i];
+		}
+		return res;
+	}
+
+	private int put(int length, byte b) {
+		if (length == scratch.length) {
+			scratch = Arrays.copyOf(scratch, length * 2);
+		}
+		scratch[length] = b;
+		return length + 1;
+	}
+
+	private static byte[] key(String key) {
+		return key.getBytes(StandardCharsets.US_ASCII);
+	}
+}
@@ -0,0 +1,88 @@
+package telran.students.importer;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Collections;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+
+//checkpoint file: the offset of the input such that all the rows before it are written (or rejected),
+//then a line per batch written after the offset - the offset of its first row
+//chunks are completed out of order, the offset is advanced over the completed prefix of the chunks;
+//the written batches of the following chunks are skipped by a resumed import, so their marks aren't added again
+//(the chunks and the batches are the same if the import is resumed with the same chunk and batch sizes)
+class ImportCheckpoint {
+	record Saved(long offset, NavigableSet<Long> batches) {
+		static final Saved NONE = new Saved(0, Collections.emptyNavigableSet());
+	}
+
+	private final Path path;
+	private final List<Chunk> chunks;
+	private final RejectedRows rejectedRows;
+	private final boolean[] done;
+	private final NavigableSet<Long> batches;
+	private long offset;
+	private int next;
+
+	ImportCheckpoint(Path path, List<Chunk> chunks, RejectedRows rejectedRows, Saved saved) {
+		this.path = path;
+		this.chunks = chunks;
+		this.rejectedRows = rejectedRows;
+		done = new boolean[chunks.size()];
+		offset = saved.offset();
+		batches = new TreeSet<>(saved.batches());
+	}
+
+	static Saved read(Path path) throws IOException {
+		Saved res = Saved.NONE;
+		if (Files.exists(path)) {
+			List<Long> numbers = Files.readAllLines(path, StandardCharsets.US_ASCII).stream()
+					.filter(line -> !line.isBlank()).map(line -> Long.parseLong(line.trim())).toList();
+			if (!numbers.isEmpty()) {
+				res = new Saved(numbers.get(0), new TreeSet<>(numbers.subList(1, numbers.size())));
+			}
+		}
+		return res;
+	}
+
+	synchronized boolean isWritten(RowsBatch batch) {
+		return batches.contains(batch.getOffset());
+	}
+
+	synchronized void written(RowsBatch batch) throws IOException {
+		batches.add(batch.getOffset());
+		save();
+	}
+
+	synchronized void done(Chunk chunk) throws IOException {
+		done[chunk.index()] = true;
+		int prevNext = next;
+		while (next < done.length && done[next]) {
+			next++;
+		}
+		if (next > prevNext) {
+			offset = chunks.get(next - 1).to();
+			batches.headSet(offset).clear();
+			save();
+		}
+	}
+
+	private void save() throws IOException {
+		//rejected rows of the saved batches should be in the error file before the checkpoint is saved
+		rejectedRows.flush();
+		String content = batches.stream().map(batchOffset -> "\n" + batchOffset)
+				.collect(Collectors.joining("", Long.toString(offset), "\n"));
+		Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+		Files.writeString(tmp, content, StandardCharsets.US_ASCII);
+		Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	void delete() throws IOException {
+		Files.deleteIfExists(path);
+	}
+}
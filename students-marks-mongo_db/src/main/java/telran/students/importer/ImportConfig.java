@@ -0,0 +1,29 @@
+package telran.students.importer;
+
+import java.nio.file.Path;
+import java.util.function.Consumer;
+
+import lombok.Builder;
+import telran.students.export.ExportFormat;
+
+//the input has one of the formats of StudentsExporter
+//the error and checkpoint files default to the input path with the suffixes .errors and .checkpoint
+@Builder(toBuilder = true)
+public record ImportConfig(ExportFormat format, int chunkSize, int batchSize, int queueCapacity, int parsers,
+		int writers, Path errorFile, Path checkpointFile, boolean resume, Consumer<ImportResult> progressListener) {
+	//default values
+	public static class ImportConfigBuilder {
+		private ExportFormat format = ExportFormat.NDJSON;
+		//bytes of the file mapped and parsed by one task, extended to the end of the line
+		private int chunkSize = 16 * 1024 * 1024;
+		//students per call of the bulk methods of the service
+		private int batchSize = 1000;
+		//parsed batches waiting for the writers, a full queue blocks the parsers
+		private int queueCapacity = 8;
+		private int parsers = Runtime.getRuntime().availableProcessors();
+		private int writers = 2;
+		//continue from the offset saved in the checkpoint file skipping the batches written after it
+		private boolean resume = false;
+		private Consumer<ImportResult> progressListener = result -> {};
+	}
+}
@@ -0,0 +1,12 @@
+package telran.students.importer;
+
+//nStudents is the number of inserted students, nRejected is the number of rows written to the error file
+public record ImportResult(long nRows, long nStudents, long nMarks, long nRejected, long nBytes, long millis) {
+	public long rowsPerSecond() {
+		return nRows * 1000 / Math.max(millis, 1);
+	}
+
+	public double megabytesPerSecond() {
+		return nBytes * 1000.0 / Math.max(millis, 1) / (1024 * 1024);
+	}
+}
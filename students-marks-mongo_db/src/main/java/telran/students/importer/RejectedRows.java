@@ -0,0 +1,47 @@
+package telran.students.importer;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicLong;
+
+//error file: a line per rejected row - offset of the row in the input, tab, reason, tab, the row as is
+class RejectedRows implements Closeable {
+	private final BufferedWriter writer;
+	private final AtomicLong count = new AtomicLong();
+
+	RejectedRows(Path path, boolean append) throws IOException {
+		writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8, StandardOpenOption.CREATE,
+				StandardOpenOption.WRITE, append ? StandardOpenOption.APPEND : StandardOpenOption.TRUNCATE_EXISTING);
+	}
+
+	void write(long offset, String reason, String row) {
+		count.incrementAndGet();
+		String line = "%d\t%s\t%s\n".formatted(offset, reason.replace('\t', ' ').replace('\n', ' '), row);
+		synchronized (this) {
+			try {
+				writer.write(line);
+			} catch (IOException e) {
+				throw new UncheckedIOException("error file write failed", e);
+			}
+		}
+	}
+
+	synchronized void flush() throws IOException {
+		writer.flush();
+	}
+
+	long getCount() {
+		return count.get();
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+		writer.close();
+	}
+}
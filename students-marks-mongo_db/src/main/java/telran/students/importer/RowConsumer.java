@@ -0,0 +1,13 @@
+package telran.students.importer;
+
+import java.util.List;
+
+import telran.students.dto.Mark;
+import telran.students.dto.Student;
+
+//start and end of a row are positions in the buffer of the chunk
+interface RowConsumer {
+	void accept(Student student, List<Mark> marks, int start, int end);
+
+	void reject(int start, int end, String reason);
+}
@@ -0,0 +1,98 @@
+package telran.students.importer;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import telran.students.dto.Mark;
+import telran.students.dto.Student;
+
+//students and marks of consecutive rows of a chunk for one bulk write
+//the rows are kept as positions in the chunk buffer, the text is read only for the rejected rows;
+//the rows rejected by the parser are written with the batch, so a batch written before a resume is skipped whole
+class RowsBatch {
+	private record ParseError(int start, int end, String reason) {
+	}
+
+	final Chunk chunk;
+	final ByteBuffer buffer;
+	final Map<Long, Student> students = new LinkedHashMap<>();
+	final Map<Long, List<Mark>> marks = new HashMap<>();
+	//id, start, end of each row
+	private long[] rows = new long[3 * 64];
+	private int nRows;
+	private final List<ParseError> parseErrors = new ArrayList<>();
+	//start of the first row in the chunk buffer
+	private int start = -1;
+
+	RowsBatch(Chunk chunk, ByteBuffer buffer) {
+		this.chunk = chunk;
+		this.buffer = buffer;
+	}
+
+	void add(Student student, List<Mark> studentMarks, int start, int end) {
+		setStart(start);
+		students.putIfAbsent(student.id(), student);
+		if (!studentMarks.isEmpty()) {
+			marks.computeIfAbsent(student.id(), id -> new ArrayList<>()).addAll(studentMarks);
+		}
+		if (3 * nRows == rows.length) {
+			rows = Arrays.copyOf(rows, rows.length * 2);
+		}
+		rows[3 * nRows] = student.id();
+		rows[3 * nRows + 1] = start;
+		rows[3 * nRows + 2] = end;
+		nRows++;
+	}
+
+	void addParseError(int start, int end, String reason) {
+		setStart(start);
+		parseErrors.add(new ParseError(start, end, reason));
+	}
+
+	private void setStart(int start) {
+		if (this.start < 0) {
+			this.start = start;
+		}
+	}
+
+	//offset of the first row in the input identifies the batch in the checkpoint
+	long getOffset() {
+		return chunk.from() + start;
+	}
+
+	//all rows including the ones rejected by the parser
+	int getRows() {
+		return nRows + parseErrors.size();
+	}
+
+	int size() {
+		return students.size();
+	}
+
+	boolean contains(long id) {
+		return students.containsKey(id);
+	}
+
+	long getMarksCount() {
+		return marks.values().stream().mapToLong(List::size).sum();
+	}
+
+	//rows rejected by the parser and rows of the students rejected by the writes
+	void reject(Map<Long, String> reasons, RejectedRows rejectedRows) {
+		parseErrors.forEach(error -> rejectedRows.write(chunk.from() + error.start(), error.reason(),
+				ChunkParser.line(buffer, error.start(), error.end())));
+		for (int i = 0; i < nRows; i++) {
+			String reason = reasons.get(rows[3 * i]);
+			if (reason != null) {
+				int start = (int) rows[3 * i + 1];
+				int end = (int) rows[3 * i + 2];
+				rejectedRows.write(chunk.from() + start, reason, ChunkParser.line(buffer, start, end));
+			}
+		}
+	}
+}
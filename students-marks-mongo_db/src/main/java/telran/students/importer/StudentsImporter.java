@@ -0,0 +1,314 @@
+package telran.students.importer;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.stereotype.Component;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import telran.students.dto.BulkItemError;
+import telran.students.dto.BulkResult;
+import telran.students.dto.Mark;
+import telran.students.dto.Student;
+import telran.students.service.StudentsService;
+
+//parallel import of a file in the formats of StudentsExporter
+//the file is split into line-aligned chunks, each chunk is memory-mapped and parsed by a parser thread
+//into batches of students; the batches go through a bounded queue (a full queue blocks the parsers)
+//to the writer threads calling the bulk methods of the service, so the caches and views stay consistent
+//students with existing ids are not rejected: rows of one student may be split between the batches,
+//the marks of such rows are added to the existing student; a phone of another student rejects the rows
+@Component
+@Slf4j
+@RequiredArgsConstructor
+public class StudentsImporter {
+	private static final RowsBatch END = new RowsBatch(null, null);
+	final StudentsService studentsService;
+
+	public ImportResult importStudents(Path path, ImportConfig config) {
+		long start = System.currentTimeMillis();
+		Path errorFile = config.errorFile() != null ? config.errorFile()
+				: path.resolveSibling(path.getFileName() + ".errors");
+		Path checkpointFile = config.checkpointFile() != null ? config.checkpointFile()
+				: path.resolveSibling(path.getFileName() + ".checkpoint");
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+				RejectedRows rejectedRows = new RejectedRows(errorFile, config.resume())) {
+			ImportCheckpoint.Saved saved = config.resume() ? ImportCheckpoint.read(checkpointFile)
+					: ImportCheckpoint.Saved.NONE;
+			List<Chunk> chunks = split(channel, saved.offset(), config.chunkSize());
+			ImportCheckpoint checkpoint = new ImportCheckpoint(checkpointFile, chunks, rejectedRows, saved);
+			ImportRun run = new ImportRun(channel, config, chunks, checkpoint, rejectedRows, start);
+			run.execute();
+			checkpoint.delete();
+			ImportResult res = run.getResult();
+			log.info("imported {} rows from {}: {} students, {} marks, {} rejected rows in {} ms "
+					+ "({} rows per second, {} MB per second)", res.nRows(), path, res.nStudents(), res.nMarks(),
+					res.nRejected(), res.millis(), res.rowsPerSecond(), "%.1f".formatted(res.megabytesPerSecond()));
+			return res;
+		} catch (IOException e) {
+			throw new UncheckedIOException("import of %s failed".formatted(path), e);
+		}
+	}
+
+	private List<Chunk> split(FileChannel channel, long from, int chunkSize) throws IOException {
+		long size = channel.size();
+		List<Chunk> chunks = new ArrayList<>();
+		ByteBuffer buffer = ByteBuffer.allocate(4096);
+		while (from < size) {
+			long to = Math.min(from + chunkSize, size);
+			if (to < size) {
+				to = lineEnd(channel, to - 1, size, buffer);
+			}
+			if (to - from > Integer.MAX_VALUE) {
+				throw new IllegalArgumentException("line at %d is too long".formatted(from));
+			}
+			chunks.add(new Chunk(chunks.size(), from, to));
+			from = to;
+		}
+		return chunks;
+	}
+
+	//position after the first line break at or after the given position
+	private long lineEnd(FileChannel channel, long position, long size, ByteBuffer buffer) throws IOException {
+		long res = size;
+		while (res == size && position < size) {
+			buffer.clear();
+			int nRead = channel.read(buffer, position);
+			for (int i = 0; i < nRead && res == size; i++) {
+				if (buffer.get(i) == '\n') {
+					res = position + i + 1;
+				}
+			}
+			position += Math.max(nRead, 1);
+		}
+		return res;
+	}
+
+	private class ImportRun {
+		final FileChannel channel;
+		final ImportConfig config;
+		final List<Chunk> chunks;
+		final ImportCheckpoint checkpoint;
+		final RejectedRows rejectedRows;
+		final long start;
+		final BlockingQueue<RowsBatch> queue;
+		//batches of a chunk not written yet plus one while the chunk is parsed
+		final AtomicInteger[] pending;
+		final AtomicBoolean failed = new AtomicBoolean();
+		final AtomicLong nRows = new AtomicLong();
+		final AtomicLong nStudents = new AtomicLong();
+		final AtomicLong nMarks = new AtomicLong();
+		final AtomicLong nBytes = new AtomicLong();
+
+		ImportRun(FileChannel channel, ImportConfig config, List<Chunk> chunks, ImportCheckpoint checkpoint,
+				RejectedRows rejectedRows, long start) {
+			this.channel = channel;
+			this.config = config;
+			this.chunks = chunks;
+			this.checkpoint = checkpoint;
+			this.rejectedRows = rejectedRows;
+			this.start = start;
+			queue = new ArrayBlockingQueue<>(config.queueCapacity());
+			pending = new AtomicInteger[chunks.size()];
+			for (int i = 0; i < pending.length; i++) {
+				pending[i] = new AtomicInteger(1);
+			}
+		}
+
+		void execute() {
+			ExecutorService parsers = Executors.newFixedThreadPool(config.parsers());
+			ExecutorService writers = Executors.newFixedThreadPool(config.writers());
+			List<Future<?>> writerFutures = new ArrayList<>();
+			for (int i = 0; i < config.writers(); i++) {
+				writerFutures.add(writers.submit(this::drain));
+			}
+			List<Future<?>> parserFutures = chunks.stream()
+				.<Future<?>>map(chunk -> parsers.submit(() -> parse(chunk))).toList();
+			Throwable failure = null;
+			try {
+				failure = await(parserFutures, failure);
+				try {
+					for (int i = 0; i < config.writers(); i++) {
+						put(END);
+					}
+				} catch (CancellationException e) {
+					writers.shutdownNow();
+				}
+				failure = await(writerFutures, failure);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				failed.set(true);
+				throw new IllegalStateException("students import is interrupted", e);
+			} finally {
+				parsers.shutdownNow();
+				writers.shutdownNow();
+			}
+			if (failure != null) {
+				throw new IllegalStateException("students import failed, it may be resumed from the checkpoint",
+						failure);
+			}
+		}
+
+		private Throwable await(List<Future<?>> futures, Throwable failure) throws InterruptedException {
+			for (Future<?> future : futures) {
+				try {
+					future.get();
+				} catch (ExecutionException e) {
+					failed.set(true);
+					if (failure == null && !(e.getCause() instanceof CancellationException)) {
+						failure = e.getCause();
+					}
+				}
+			}
+			return failure;
+		}
+
+		private void parse(Chunk chunk) {
+			try {
+				MappedByteBuffer buffer = channel.map(MapMode.READ_ONLY, chunk.from(), chunk.to() - chunk.from());
+				ChunkRows chunkRows = new ChunkRows(chunk, buffer);
+				new ChunkParser(buffer, config.format(), chunk.from() == 0).parse(chunkRows);
+				chunkRows.flush();
+				nBytes.addAndGet(chunk.to() - chunk.from());
+				complete(chunk);
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+
+		private class ChunkRows implements RowConsumer {
+			final Chunk chunk;
+			final ByteBuffer buffer;
+			RowsBatch batch;
+
+			ChunkRows(Chunk chunk, ByteBuffer buffer) {
+				this.chunk = chunk;
+				this.buffer = buffer;
+				batch = new RowsBatch(chunk, buffer);
+			}
+
+			@Override
+			public void accept(Student student, List<Mark> marks, int start, int end) {
+				//rows of one student are not split between the batches of a chunk
+				if (batch.size() >= config.batchSize() && !batch.contains(student.id())) {
+					flush();
+					batch = new RowsBatch(chunk, buffer);
+				}
+				batch.add(student, marks, start, end);
+			}
+
+			@Override
+			public void reject(int start, int end, String reason) {
+				batch.addParseError(start, end, reason);
+			}
+
+			void flush() {
+				if (batch.getRows() > 0) {
+					put(chunk, batch);
+				}
+			}
+		}
+
+		private void put(Chunk chunk, RowsBatch batch) {
+			pending[chunk.index()].incrementAndGet();
+			try {
+				put(batch);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new CancellationException("parsing is interrupted");
+			}
+		}
+
+		//blocks while the queue is full, unless the import has failed
+		private void put(RowsBatch batch) throws InterruptedException {
+			while (!queue.offer(batch, 100, TimeUnit.MILLISECONDS)) {
+				if (failed.get()) {
+					throw new CancellationException("students import has failed");
+				}
+			}
+		}
+
+		private void drain() {
+			try {
+				RowsBatch batch;
+				while ((batch = queue.take()) != END) {
+					if (failed.get()) {
+						throw new CancellationException("students import has failed");
+					}
+					if (!checkpoint.isWritten(batch)) {
+						write(batch);
+						checkpoint.written(batch);
+					}
+					complete(batch.chunk);
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new CancellationException("writing is interrupted");
+			} catch (IOException e) {
+				failed.set(true);
+				throw new UncheckedIOException("checkpoint write failed", e);
+			} catch (RuntimeException e) {
+				failed.set(true);
+				throw e;
+			}
+		}
+
+		private void write(RowsBatch batch) {
+			Map<Long, String> reasons = new HashMap<>();
+			BulkResult studentsResult = studentsService.addStudents(new ArrayList<>(batch.students.values()));
+			for (BulkItemError error : studentsResult.errors()) {
+				if (error.reason() != BulkItemError.Reason.DUPLICATE_ID) {
+					reasons.put(error.id(), error.message());
+				}
+			}
+			reasons.keySet().forEach(batch.marks::remove);
+			studentsService.addMarks(batch.marks).errors()
+				.forEach(error -> reasons.put(error.id(), error.message()));
+			batch.reject(reasons, rejectedRows);
+			nRows.addAndGet(batch.getRows());
+			nStudents.addAndGet(studentsResult.nSucceeded());
+			reasons.keySet().forEach(batch.marks::remove);
+			nMarks.addAndGet(batch.getMarksCount());
+		}
+
+		private void complete(Chunk chunk) {
+			if (pending[chunk.index()].decrementAndGet() == 0) {
+				try {
+					checkpoint.done(chunk);
+				} catch (IOException e) {
+					throw new UncheckedIOException("checkpoint write failed", e);
+				}
+				ImportResult progress = getResult();
+				log.debug("imported {} rows ({} rows per second)", progress.nRows(), progress.rowsPerSecond());
+				config.progressListener().accept(progress);
+			}
+		}
+
+		ImportResult getResult() {
+			return new ImportResult(nRows.get(), nStudents.get(), nMarks.get(), rejectedRows.getCount(), nBytes.get(),
+					System.currentTimeMillis() - start);
+		}
+	}
+}
@@ -0,0 +1,23 @@
+package telran.students.model;
+
+//stored field names of Mark (see MarkConverters), queries and indexes should use these names
+//instead of the names of the Mark properties
+public final class MarkFields {
+	//id of the subject in SubjectsDictionary
+	public static final String SUBJECT = "s";
+	//number of days since 1970-01-01 (LocalDate.toEpochDay)
+	public static final String DATE = "d";
+	public static final String SCORE = "v";
+	//field names written before the compact format
+	public static final String LEGACY_SUBJECT = "subject";
+	public static final String LEGACY_DATE = "date";
+	public static final String LEGACY_SCORE = "score";
+
+	private MarkFields() {
+	}
+
+	//path of the field of the marks array elements, e.g. marks.v
+	public static String marks(String field) {
+		return "marks." + field;
+	}
+}
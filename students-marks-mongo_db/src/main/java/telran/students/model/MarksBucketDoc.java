@@ -0,0 +1,34 @@
+package telran.students.model;
+
+import java.util.List;
+
+import org.bson.types.ObjectId;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import lombok.Getter;
+import telran.students.dto.Mark;
+
+//bucket of marks of one student, the number of marks in a bucket is bounded by the bucket size
+//seq orders the buckets of a student, it's unique for the student (index student_seq)
+@Document(collection = "students_marks")
+@Getter
+public class MarksBucketDoc {
+	public static final String COLLECTION = "students_marks";
+	@Id
+	ObjectId id;
+	long studentId;
+	int seq;
+	int count;
+	List<Mark> marks;
+
+	MarksBucketDoc() {
+	}
+
+	public MarksBucketDoc(long studentId, int seq, List<Mark> marks) {
+		this.studentId = studentId;
+		this.seq = seq;
+		this.count = marks.size();
+		this.marks = marks;
+	}
+}
@@ -1,6 +1,7 @@
 package telran.students.model;
 
 import org.springframework.data.annotation.Id;
+import org.springframework.data.annotation.Version;
 import org.springframework.data.mongodb.core.mapping.Document;
 
 import lombok.*;
@@ -10,15 +11,31 @@ import telran.students.dto.*;
 @Document(collection="students")
 @Getter
 public class StudentDoc {
+	public static final int GOOD_SCORE_THRESHOLD = 80;
 	@Id
 	 Long id;
 	 String name;
 	@Setter
 	 String phone;
 	List<Mark> marks;
+	//denormalized statistics of marks, updated together with marks
+	int marksCount;
+	long scoreSum;
+	double avgScore;
+	//number of scores greater than GOOD_SCORE_THRESHOLD
+	int goodMarksCount;
+	//incremented by each update, conditional updates of the read-modify-write operations check it
+	@Version
+	Long version;
 	
 	public void addMark(Mark mark) {
 		marks.add(mark);
+		marksCount++;
+		scoreSum += mark.score();
+		avgScore = (double) scoreSum / marksCount;
+		if (mark.score() > GOOD_SCORE_THRESHOLD) {
+			goodMarksCount++;
+		}
 	}
 	public static StudentDoc of(Student student) {
 		StudentDoc studentDoc = new StudentDoc(student.id(), student.name(),student.phone(), null);
@@ -0,0 +1,14 @@
+package telran.students.service;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+//reads of the method are routed by ReadRouting according to app.students.analytics.read-preference
+//(secondaries with bounded staleness), causally consistent with the writes of the application
+//not for the methods returning open cursors (streams): the session is closed when the method returns
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface AnalyticsRead {
+}
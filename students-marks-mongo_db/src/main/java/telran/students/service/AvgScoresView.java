@@ -0,0 +1,173 @@
+package telran.students.service;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.annotation.Order;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.domain.Sort.Direction;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.AggregationOperation;
+import org.springframework.data.mongodb.core.aggregation.MergeOperation.WhenDocumentsDontMatch;
+import org.springframework.data.mongodb.core.aggregation.MergeOperation.WhenDocumentsMatch;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import telran.students.configuration.StartupOrder;
+import telran.students.dto.AvgScoreReport;
+import telran.students.dto.NameAvgScore;
+import telran.students.model.StudentDoc;
+
+//materialized view of the students average scores
+//the students with new marks are refreshed by $merge after a given number of writes or by schedule
+@Component
+@Slf4j
+public class AvgScoresView implements ProjectionHandler {
+	public static final String COLLECTION = "students_avg_scores";
+	final MongoTemplate mongoTemplate;
+	final QueryResultsCache queryResultsCache;
+	final int refreshWrites;
+	private final Set<Long> dirtyIds = ConcurrentHashMap.newKeySet();
+	private final AtomicInteger nWrites = new AtomicInteger();
+	private final ExecutorService executor = Executors.newSingleThreadExecutor();
+	private volatile Instant refreshedAt = Instant.EPOCH;
+
+	public AvgScoresView(MongoTemplate mongoTemplate, QueryResultsCache queryResultsCache,
+			@Value("${app.students.avg-view.refresh-writes:100}") int refreshWrites) {
+		this.mongoTemplate = mongoTemplate;
+		this.queryResultsCache = queryResultsCache;
+		this.refreshWrites = refreshWrites;
+	}
+
+	public void markDirty(long id) {
+		dirtyIds.add(id);
+		if (nWrites.incrementAndGet() >= refreshWrites) {
+			nWrites.set(0);
+			executor.execute(this::refreshLogged);
+		}
+	}
+
+	//the student is removed from the students before, so holding the lock of refresh the $merge
+	//of a concurrent refresh either has already run or doesn't find the student
+	public synchronized void remove(long id) {
+		dirtyIds.remove(id);
+		mongoTemplate.remove(new Query(Criteria.where("_id").is(id)), COLLECTION);
+	}
+
+	@Override
+	public void onChanges(List<StudentChange> changes) {
+		changes.forEach(change -> {
+			if (change.type() == StudentChange.Type.DELETE) {
+				remove(change.id());
+			} else {
+				markDirty(change.id());
+			}
+		});
+	}
+
+	@Override
+	public void reset() {
+		rebuild();
+	}
+
+	@EventListener(ApplicationReadyEvent.class)
+	@Order(StartupOrder.VIEWS)
+	public synchronized void rebuild() {
+		Instant startedAt = Instant.now();
+		List<Long> ids = new ArrayList<>(dirtyIds);
+		dirtyIds.removeAll(ids);
+		nWrites.set(0);
+		try {
+			mongoTemplate.aggregate(Aggregation.newAggregation(matchWithMarks(), projectAvgScore(),
+					Aggregation.out(COLLECTION)), StudentDoc.class, Document.class);
+		} catch (RuntimeException e) {
+			dirtyIds.addAll(ids);
+			throw e;
+		}
+		refreshedAt = startedAt;
+		queryResultsCache.bumpEpoch();
+		log.info("average scores view is rebuilt");
+	}
+
+	//the exceptions of the executor tasks are lost, the students stay dirty until the next refresh
+	private void refreshLogged() {
+		try {
+			refresh();
+		} catch (RuntimeException e) {
+			log.error("average scores view refresh failed: {}", e.toString());
+		}
+	}
+
+	@Scheduled(fixedDelayString = "${app.students.avg-view.refresh-ms:60000}")
+	public synchronized void refresh() {
+		Instant startedAt = Instant.now();
+		List<Long> ids = new ArrayList<>(dirtyIds);
+		if (!ids.isEmpty()) {
+			//the ids are removed before the aggregation, so a write during it marks the student again;
+			//they are returned if the aggregation fails, so the students stay pending until the next refresh
+			dirtyIds.removeAll(ids);
+			try {
+				mongoTemplate.aggregate(Aggregation.newAggregation(
+						Aggregation.match(Criteria.where("id").in(ids)),
+						matchWithMarks(),
+						projectAvgScore(),
+						Aggregation.merge().intoCollection(COLLECTION)
+							.whenMatched(WhenDocumentsMatch.replaceDocument())
+							.whenNotMatched(WhenDocumentsDontMatch.insertNewDocument()).build()),
+						StudentDoc.class, Document.class);
+			} catch (RuntimeException e) {
+				dirtyIds.addAll(ids);
+				throw e;
+			}
+			log.debug("average scores view is refreshed for {} students", ids.size());
+		}
+		refreshedAt = startedAt;
+		//the cached reports have the refresh time of the view
+		queryResultsCache.bumpEpoch();
+	}
+
+	public AvgScoreReport getAvgScoreGreater(int avgScoreThreshold) {
+		//refresh time and pending students are taken before reading, so they never understate the staleness
+		Instant viewRefreshedAt = refreshedAt;
+		int nPendingStudents = dirtyIds.size();
+		List<NameAvgScore> students = mongoTemplate.find(avgScoreGreaterQuery(avgScoreThreshold), Document.class,
+				COLLECTION).stream().map(AvgScoresView::toNameAvgScore).toList();
+		return new AvgScoreReport(students, viewRefreshedAt, nPendingStudents);
+	}
+
+	static Query avgScoreGreaterQuery(int avgScoreThreshold) {
+		return new Query(Criteria.where("avgScore").gt(avgScoreThreshold)).with(Sort.by(Direction.DESC, "avgScore"));
+	}
+
+	static NameAvgScore toNameAvgScore(Document document) {
+		return new NameAvgScore(document.getString("name"), document.getDouble("avgScore").intValue());
+	}
+
+	private AggregationOperation matchWithMarks() {
+		return Aggregation.match(Criteria.where("marksCount").gt(0));
+	}
+
+	private AggregationOperation projectAvgScore() {
+		return Aggregation.project("name", "avgScore");
+	}
+
+	@PreDestroy
+	void shutdown() {
+		executor.shutdownNow();
+	}
+}
@@ -0,0 +1,260 @@
+package telran.students.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.bson.BsonDocument;
+import org.bson.BsonValue;
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.annotation.Order;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.stereotype.Component;
+
+import com.mongodb.MongoCommandException;
+import com.mongodb.client.ChangeStreamIterable;
+import com.mongodb.client.MongoChangeStreamCursor;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.Aggregates;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.Projections;
+import com.mongodb.client.model.ReplaceOptions;
+import com.mongodb.client.model.changestream.ChangeStreamDocument;
+import com.mongodb.client.model.changestream.FullDocument;
+import com.mongodb.client.model.changestream.OperationType;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import telran.students.configuration.StartupOrder;
+import telran.students.model.StudentDoc;
+
+//consumer of the change stream of the students collection feeding the projection handlers
+//so the derived views are correct even for the writes bypassing the service
+//the changes are dispatched by batches, the resume token is saved after all handlers took the batch:
+//a failed handler gets the batch again, a handler failing repeatedly is rebuilt by reset()
+//requires replica set (the embedded MongoDB: de.flapdoodle.mongodb.embedded.storage.repl-set-name)
+@Component
+@ConditionalOnProperty(name = "app.students.change-stream.enabled", havingValue = "true")
+@Slf4j
+public class ChangeStreamProjector {
+	public static final String TOKENS_COLLECTION = "change_stream_tokens";
+	//error code of the resume token not found in the oplog
+	private static final int CHANGE_STREAM_HISTORY_LOST = 286;
+	final MongoTemplate mongoTemplate;
+	final List<ProjectionHandler> handlers;
+	final int batchSize;
+	final long maxAwaitMillis;
+	final long retryMillis;
+	final int dispatchAttempts;
+	private volatile boolean running;
+	private Thread thread;
+
+	public ChangeStreamProjector(MongoTemplate mongoTemplate, List<ProjectionHandler> handlers,
+			@Value("${app.students.change-stream.batch-size:100}") int batchSize,
+			@Value("${app.students.change-stream.max-await-ms:200}") long maxAwaitMillis,
+			@Value("${app.students.change-stream.retry-ms:1000}") long retryMillis,
+			@Value("${app.students.change-stream.dispatch-attempts:3}") int dispatchAttempts) {
+		this.mongoTemplate = mongoTemplate;
+		this.handlers = handlers;
+		this.batchSize = batchSize;
+		this.maxAwaitMillis = maxAwaitMillis;
+		this.retryMillis = retryMillis;
+		this.dispatchAttempts = dispatchAttempts;
+	}
+
+	//started before the views are loaded: the stream is opened first, so the writes during the loading
+	//are consumed after it, the initial position is saved for a restart before the first change
+	@EventListener(ApplicationReadyEvent.class)
+	@Order(StartupOrder.CHANGE_STREAM)
+	public synchronized void start() {
+		if (!running) {
+			running = true;
+			MongoChangeStreamCursor<ChangeStreamDocument<Document>> initialCursor = null;
+			try {
+				initialCursor = openCursor();
+			} catch (RuntimeException e) {
+				log.error("change stream can't be opened before the views are loaded: {}", e.toString());
+			}
+			MongoChangeStreamCursor<ChangeStreamDocument<Document>> cursor = initialCursor;
+			thread = new Thread(() -> run(cursor), "students-change-stream");
+			thread.setDaemon(true);
+			thread.start();
+			log.info("change stream projector is started, handlers {}", handlers.size());
+		}
+	}
+
+	@PreDestroy
+	public void stop() {
+		Thread projectorThread;
+		synchronized (this) {
+			running = false;
+			projectorThread = thread;
+		}
+		if (projectorThread != null) {
+			projectorThread.interrupt();
+			try {
+				projectorThread.join(maxAwaitMillis + retryMillis);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	private void run(MongoChangeStreamCursor<ChangeStreamDocument<Document>> initialCursor) {
+		MongoChangeStreamCursor<ChangeStreamDocument<Document>> nextCursor = initialCursor;
+		boolean resetPending = false;
+		while (running) {
+			try (MongoChangeStreamCursor<ChangeStreamDocument<Document>> changeStreamCursor =
+					nextCursor != null ? nextCursor : openCursor()) {
+				nextCursor = null;
+				if (resetPending) {
+					//as at the start, the stream is opened before the projections are reloaded
+					handlers.forEach(ProjectionHandler::reset);
+					resetPending = false;
+				}
+				consume(changeStreamCursor);
+			} catch (MongoCommandException e) {
+				if (e.getErrorCode() == CHANGE_STREAM_HISTORY_LOST) {
+					log.warn("change stream can't be resumed, the projections are reset: {}", e.getMessage());
+					getTokensCollection().deleteOne(Filters.eq("_id", getCollectionName()));
+					resetPending = true;
+				} else {
+					retry(e);
+				}
+			} catch (RuntimeException e) {
+				//interruption by stop() is reported by MongoInterruptedException,
+				//a failed reset of a handler resumes the stream from the last saved token
+				retry(e);
+			}
+		}
+		log.info("change stream projector is stopped");
+	}
+
+	private void consume(MongoChangeStreamCursor<ChangeStreamDocument<Document>> changeStreamCursor) {
+		List<StudentChange> changes = new ArrayList<>(batchSize);
+		BsonDocument resumeToken = null;
+		while (running) {
+			//waits for the next change no more than maxAwaitTime
+			ChangeStreamDocument<Document> event = changeStreamCursor.tryNext();
+			if (event != null) {
+				StudentChange change = toChange(event);
+				if (change != null) {
+					changes.add(change);
+				}
+				resumeToken = event.getResumeToken();
+			}
+			if (resumeToken != null && (event == null || changes.size() >= batchSize)) {
+				dispatch(changes);
+				saveResumeToken(resumeToken);
+				changes.clear();
+				resumeToken = null;
+			}
+		}
+	}
+
+	private void dispatch(List<StudentChange> changes) {
+		if (!changes.isEmpty()) {
+			handlers.forEach(handler -> dispatch(handler, changes));
+			log.trace("dispatched {} changes", changes.size());
+		}
+	}
+
+	private void dispatch(ProjectionHandler handler, List<StudentChange> changes) {
+		//the handling is idempotent, so the whole batch is handled again
+		boolean handled = false;
+		int attempt = 1;
+		while (!handled) {
+			try {
+				handler.onChanges(changes);
+				handled = true;
+			} catch (RuntimeException e) {
+				if (!running) {
+					//the batch is not acknowledged, it's delivered again after the restart
+					throw e;
+				}
+				if (attempt++ < dispatchAttempts) {
+					log.warn("projection handler {} failed, retry in {} ms: {}", handler.getClass().getSimpleName(),
+							retryMillis, e.toString());
+					pause();
+				} else {
+					log.error("projection handler {} failed {} times, the projection is reset: {}",
+							handler.getClass().getSimpleName(), attempt - 1, e.toString());
+					handler.reset();
+					handled = true;
+				}
+			}
+		}
+	}
+
+	private StudentChange toChange(ChangeStreamDocument<Document> event) {
+		StudentChange res = null;
+		BsonValue id = event.getDocumentKey() == null ? null : event.getDocumentKey().get("_id");
+		if (id != null && id.isNumber()) {
+			long studentId = id.asNumber().longValue();
+			OperationType operationType = event.getOperationType();
+			if (operationType == OperationType.DELETE) {
+				res = new StudentChange(StudentChange.Type.DELETE, studentId, null);
+			} else if (event.getFullDocument() != null) {
+				//no full document: the student is deleted after the update, the deletion follows
+				res = new StudentChange(StudentChange.Type.UPSERT, studentId,
+						mongoTemplate.getConverter().read(StudentDoc.class, event.getFullDocument()));
+			}
+		}
+		return res;
+	}
+
+	private MongoChangeStreamCursor<ChangeStreamDocument<Document>> openCursor() {
+		//the marks are not required by the projections, so they are excluded from the looked up documents
+		ChangeStreamIterable<Document> changeStream = mongoTemplate.getCollection(getCollectionName())
+				.watch(List.of(
+						Aggregates.match(Filters.in("operationType", "insert", "update", "replace", "delete")),
+						Aggregates.project(Projections.exclude("fullDocument.marks"))))
+				.fullDocument(FullDocument.UPDATE_LOOKUP)
+				.batchSize(batchSize)
+				.maxAwaitTime(maxAwaitMillis, TimeUnit.MILLISECONDS);
+		Document token = getTokensCollection().find(Filters.eq("_id", getCollectionName())).first();
+		if (token != null) {
+			changeStream.resumeAfter(token.get("token", Document.class).toBsonDocument());
+			log.debug("change stream is resumed");
+		}
+		MongoChangeStreamCursor<ChangeStreamDocument<Document>> cursor = changeStream.cursor();
+		//the opened stream has the resume token of its start (post batch resume token)
+		if (token == null && cursor.getResumeToken() != null) {
+			saveResumeToken(cursor.getResumeToken());
+		}
+		return cursor;
+	}
+
+	private void saveResumeToken(BsonDocument resumeToken) {
+		getTokensCollection().replaceOne(Filters.eq("_id", getCollectionName()),
+				new Document("_id", getCollectionName()).append("token", resumeToken),
+				new ReplaceOptions().upsert(true));
+	}
+
+	private void retry(RuntimeException e) {
+		if (running) {
+			log.error("change stream failed, retry in {} ms: {}", retryMillis, e.toString());
+			pause();
+		}
+	}
+
+	private void pause() {
+		try {
+			Thread.sleep(retryMillis);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private String getCollectionName() {
+		return mongoTemplate.getCollectionName(StudentDoc.class);
+	}
+
+	private MongoCollection<Document> getTokensCollection() {
+		return mongoTemplate.getCollection(TOKENS_COLLECTION);
+	}
+}
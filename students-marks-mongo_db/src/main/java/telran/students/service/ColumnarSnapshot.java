@@ -0,0 +1,420 @@
+package telran.students.service;
+
+import static telran.students.model.MarkFields.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.function.IntBinaryOperator;
+import java.util.function.IntPredicate;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.annotation.Order;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import telran.students.configuration.StartupOrder;
+import telran.students.dto.NameAvgScore;
+import telran.students.dto.Student;
+import telran.students.model.StudentDoc;
+
+//optional in memory column store of the students collection for the dashboard queries:
+//the marks of the student i are at the indexes offsets[i] <= j < offsets[i + 1] of the marks columns,
+//the queries scan the primitive arrays by parallel streams without allocation per mark
+//the snapshot is immutable, the refresh builds a new one from the previous snapshot and the changed students
+//(marked dirty by the writes of the services and by the change stream); the writes bypassing the services
+//require reload; marks in the buckets are not supported
+@Component
+@Slf4j
+public class ColumnarSnapshot implements ProjectionHandler {
+	private record Columns(long[] ids, String[] names, String[] phones, int[] offsets, int[] subjects, int[] dates,
+			int[] scores, int[] goodMarksCounts, long[] scoreSums) {
+		int size() {
+			return ids.length;
+		}
+
+		Student student(int index) {
+			return new Student(ids[index], names[index], phones[index]);
+		}
+
+		int marksCount(int index) {
+			return offsets[index + 1] - offsets[index];
+		}
+
+		double avgScore(int index) {
+			return (double) scoreSums[index] / marksCount(index);
+		}
+
+		boolean allMarks(int index, IntPredicate mark) {
+			int j = offsets[index];
+			while (j < offsets[index + 1] && mark.test(j)) {
+				j++;
+			}
+			return j == offsets[index + 1];
+		}
+
+		boolean anyMark(int index, IntPredicate mark) {
+			return !allMarks(index, j -> !mark.test(j));
+		}
+	}
+
+	private static final Columns EMPTY = new Builder().build();
+
+	final MongoTemplate mongoTemplate;
+	final SubjectsDictionary subjectsDictionary;
+	@Getter
+	final boolean enabled;
+	private final Set<Long> dirtyIds = ConcurrentHashMap.newKeySet();
+	private volatile Columns columns = EMPTY;
+	private volatile boolean loaded;
+
+	public ColumnarSnapshot(MongoTemplate mongoTemplate, SubjectsDictionary subjectsDictionary,
+			MarksBuckets marksBuckets, @Value("${app.students.columnar.enabled:false}") boolean enabled) {
+		this.mongoTemplate = mongoTemplate;
+		this.subjectsDictionary = subjectsDictionary;
+		if (enabled && marksBuckets.isEnabled()) {
+			log.warn("columnar snapshot is disabled: marks are stored in the buckets");
+		}
+		this.enabled = enabled && !marksBuckets.isEnabled();
+	}
+
+	public boolean isReady() {
+		return enabled && loaded;
+	}
+
+	@EventListener(ApplicationReadyEvent.class)
+	@Order(StartupOrder.VIEWS)
+	public synchronized void reload() {
+		if (enabled) {
+			//the ids are cleared before the cursor is opened, so the writes during the load are refreshed later
+			dirtyIds.clear();
+			Builder builder = new Builder();
+			load(new Query(), builder::append);
+			columns = builder.build();
+			logSkippedMarks(builder);
+			loaded = true;
+			log.info("columnar snapshot is loaded, {} students, {} marks", columns.size(), columns.scores().length);
+		}
+	}
+
+	@Scheduled(fixedDelayString = "${app.students.columnar.refresh-ms:10000}")
+	public synchronized void refresh() {
+		if (isReady() && !dirtyIds.isEmpty()) {
+			//the ids are removed before loading, so the writes during the refresh are kept for the next one
+			//on failure the ids are returned to be refreshed by the next one
+			List<Long> ids = new ArrayList<>(dirtyIds);
+			dirtyIds.removeAll(ids);
+			Builder changed = new Builder();
+			try {
+				load(new Query(Criteria.where("_id").in(ids)), changed::append);
+			} catch (RuntimeException e) {
+				dirtyIds.addAll(ids);
+				throw e;
+			}
+			columns = merge(columns, changed.build(), ids.stream().mapToLong(Long::longValue).sorted().toArray());
+			logSkippedMarks(changed);
+			log.debug("columnar snapshot is refreshed for {} students", ids.size());
+		}
+	}
+
+	public void markDirty(long id) {
+		//the writes during the reload are collected as well
+		if (enabled) {
+			dirtyIds.add(id);
+		}
+	}
+
+	@Override
+	public void onChanges(List<StudentChange> changes) {
+		changes.forEach(change -> markDirty(change.id()));
+	}
+
+	@Override
+	public void reset() {
+		reload();
+	}
+
+	private void load(Query query, Consumer<Document> consumer) {
+		//raw documents: the marks are read to the columns without Mark objects
+		query.with(Sort.by("_id")).fields().include("_id", "name", "phone", "marks");
+		try (Stream<Document> documents = mongoTemplate.stream(query, Document.class,
+				mongoTemplate.getCollectionName(StudentDoc.class))) {
+			documents.forEach(consumer);
+		}
+	}
+
+	private static void logSkippedMarks(Builder builder) {
+		if (builder.nSkippedMarks > 0) {
+			log.warn("columnar snapshot skipped {} marks missing subject, date or score", builder.nSkippedMarks);
+		}
+	}
+
+	private static Columns merge(Columns previous, Columns changed, long[] dirtyIds) {
+		//both snapshots are sorted by id; the dirty students absent in the changed snapshot are removed
+		Builder builder = new Builder();
+		int i = 0;
+		int j = 0;
+		while (i < previous.size() || j < changed.size()) {
+			if (j == changed.size() || i < previous.size() && previous.ids()[i] < changed.ids()[j]) {
+				if (Arrays.binarySearch(dirtyIds, previous.ids()[i]) < 0) {
+					builder.append(previous, i);
+				}
+				i++;
+			} else {
+				if (i < previous.size() && previous.ids()[i] == changed.ids()[j]) {
+					i++;
+				}
+				builder.append(changed, j++);
+			}
+		}
+		return builder.build();
+	}
+
+	//the same orders as of the queries of StudentsServiceImpl
+	public List<Student> getBest(int nStudents) {
+		Columns snapshot = columns;
+		int[] goodMarksCounts = snapshot.goodMarksCounts();
+		long[] ids = snapshot.ids();
+		return first(snapshot, nStudents, i -> goodMarksCounts[i] > 0, (i, j) -> {
+			int res = Integer.compare(goodMarksCounts[j], goodMarksCounts[i]);
+			return res != 0 ? res : Long.compare(ids[i], ids[j]);
+		});
+	}
+
+	public List<Student> getWorst(int nStudents) {
+		Columns snapshot = columns;
+		long[] scoreSums = snapshot.scoreSums();
+		long[] ids = snapshot.ids();
+		return first(snapshot, nStudents, i -> true, (i, j) -> {
+			int res = Long.compare(scoreSums[i], scoreSums[j]);
+			return res != 0 ? res : Long.compare(ids[i], ids[j]);
+		});
+	}
+
+	//n first students in the order by a bounded heap of the indexes: the root is the last of the kept students,
+	//so a student is compared with it only, the population is neither boxed nor sorted
+	private static List<Student> first(Columns snapshot, int nStudents, IntPredicate filter, IntBinaryOperator order) {
+		int[] heap = new int[Math.max(0, Math.min(nStudents, snapshot.size()))];
+		int heapSize = 0;
+		for (int i = 0; i < snapshot.size(); i++) {
+			if (filter.test(i)) {
+				if (heapSize < heap.length) {
+					heap[heapSize] = i;
+					siftUp(heap, heapSize++, order);
+				} else if (heapSize > 0 && order.applyAsInt(i, heap[0]) < 0) {
+					heap[0] = i;
+					siftDown(heap, heapSize, order);
+				}
+			}
+		}
+		//the roots are taken from the last to the first
+		int[] indexes = new int[heapSize];
+		for (int size = heapSize - 1; size >= 0; size--) {
+			indexes[size] = heap[0];
+			heap[0] = heap[size];
+			siftDown(heap, size, order);
+		}
+		return Arrays.stream(indexes).mapToObj(snapshot::student).toList();
+	}
+
+	private static void siftUp(int[] heap, int position, IntBinaryOperator order) {
+		int parent = (position - 1) / 2;
+		while (position > 0 && order.applyAsInt(heap[position], heap[parent]) > 0) {
+			swap(heap, position, parent);
+			position = parent;
+			parent = (position - 1) / 2;
+		}
+	}
+
+	private static void siftDown(int[] heap, int size, IntBinaryOperator order) {
+		int position = 0;
+		boolean sifted = false;
+		while (!sifted) {
+			int child = 2 * position + 1;
+			if (child + 1 < size && order.applyAsInt(heap[child + 1], heap[child]) > 0) {
+				child++;
+			}
+			sifted = child >= size || order.applyAsInt(heap[child], heap[position]) <= 0;
+			if (!sifted) {
+				swap(heap, position, child);
+				position = child;
+			}
+		}
+	}
+
+	private static void swap(int[] heap, int i, int j) {
+		int tmp = heap[i];
+		heap[i] = heap[j];
+		heap[j] = tmp;
+	}
+
+	//sorted by average score descending, the order of equal scores is not defined (as of the view)
+	public List<NameAvgScore> getAvgScoreGreater(int avgScoreThreshold) {
+		Columns snapshot = columns;
+		return IntStream.range(0, snapshot.size()).parallel()
+				.filter(i -> snapshot.marksCount(i) > 0 && snapshot.avgScore(i) > avgScoreThreshold).boxed()
+				.sorted(Comparator.<Integer>comparingDouble(i -> -snapshot.avgScore(i)))
+				.map(i -> new NameAvgScore(snapshot.names()[i], (int) snapshot.avgScore(i))).toList();
+	}
+
+	public List<Student> getStudentsAllGoodMarks(int thresholdScore) {
+		Columns snapshot = columns;
+		int[] scores = snapshot.scores();
+		return IntStream.range(0, snapshot.size()).parallel()
+				.filter(i -> snapshot.marksCount(i) > 0 && snapshot.allMarks(i, j -> scores[j] > thresholdScore))
+				.mapToObj(snapshot::student).toList();
+	}
+
+	public List<Student> getStudentsAllGoodMarksSubject(String subject, int thresholdScore) {
+		int subjectId = subjectsDictionary.findId(subject);
+		Columns snapshot = columns;
+		int[] subjects = snapshot.subjects();
+		int[] scores = snapshot.scores();
+		return subjectId == SubjectsDictionary.NO_ID ? List.of() : IntStream.range(0, snapshot.size()).parallel()
+				.filter(i -> snapshot.anyMark(i, j -> subjects[j] == subjectId)
+						&& snapshot.allMarks(i, j -> subjects[j] != subjectId || scores[j] >= thresholdScore))
+				.mapToObj(snapshot::student).toList();
+	}
+
+	//parity of the snapshot with the queries of StudentsServiceImpl on the current data,
+	//the writes between the snapshot refresh and the check are reported as differences
+	public boolean check(int nStudents, int thresholdScore, String subject) {
+		int subjectId = subjectsDictionary.findId(subject);
+		boolean res = isSame("best", getBest(nStudents),
+				findStudents(StudentsQueries.bestStudents(nStudents)));
+		res &= isSame("worst", getWorst(nStudents), findStudents(StudentsQueries.worstStudents(nStudents)));
+		res &= isSame("all good marks", getStudentsAllGoodMarks(thresholdScore),
+				findStudents(new Query(StudentsQueries.allGoodMarks(thresholdScore)).with(Sort.by("id"))));
+		res &= isSame("all good marks of " + subject, getStudentsAllGoodMarksSubject(subject, thresholdScore),
+				subjectId == SubjectsDictionary.NO_ID ? List.of() : findStudents(
+						new Query(StudentsQueries.allGoodMarksSubject(subjectId, thresholdScore)).with(Sort.by("id"))));
+		Comparator<NameAvgScore> avgOrder = Comparator.comparingInt(NameAvgScore::avgScore).reversed()
+				.thenComparing(NameAvgScore::name);
+		res &= isSame("average score greater", getAvgScoreGreater(thresholdScore).stream().sorted(avgOrder).toList(),
+				findAvgScoreGreater(thresholdScore).stream().sorted(avgOrder).toList());
+		return res;
+	}
+
+	private boolean isSame(String queryName, List<?> actual, List<?> expected) {
+		boolean res = actual.equals(expected);
+		if (!res) {
+			log.warn("columnar snapshot differs from the database on {}: {} expected {}", queryName, actual, expected);
+		}
+		return res;
+	}
+
+	private List<Student> findStudents(Query query) {
+		query.fields().include("id", "name", "phone");
+		return mongoTemplate.find(query, StudentDoc.class).stream().map(StudentDoc::build).toList();
+	}
+
+	private List<NameAvgScore> findAvgScoreGreater(int avgScoreThreshold) {
+		//the statistics of the students collection instead of the view, which may be stale
+		Query query = new Query(Criteria.where("marksCount").gt(0).and("avgScore").gt(avgScoreThreshold));
+		query.fields().include("name", "avgScore");
+		return mongoTemplate.find(query, StudentDoc.class).stream()
+				.map(studentDoc -> new NameAvgScore(studentDoc.getName(), (int) studentDoc.getAvgScore())).toList();
+	}
+
+	private static class Builder {
+		private long[] ids = new long[16];
+		private String[] names = new String[16];
+		private String[] phones = new String[16];
+		private int[] offsets = new int[17];
+		private int[] subjects = new int[64];
+		private int[] dates = new int[64];
+		private int[] scores = new int[64];
+		private int nStudents;
+		private int nMarks;
+		private int nSkippedMarks;
+
+		void append(Document document) {
+			List<Document> marks = document.getList("marks", Document.class, List.of());
+			addStudent(document.get("_id", Number.class).longValue(), document.getString("name"),
+					document.getString("phone"), marks.size());
+			//the marks are in the compact format (MarksFormatMigration),
+			//a mark missing a field is skipped and counted rather than failing the whole load
+			marks.forEach(mark -> {
+				Integer subject = mark.getInteger(SUBJECT);
+				Integer date = mark.getInteger(DATE);
+				Integer score = mark.getInteger(SCORE);
+				if (subject == null || date == null || score == null) {
+					nSkippedMarks++;
+				} else {
+					addMark(subject, date, score);
+				}
+			});
+		}
+
+		void append(Columns columns, int index) {
+			int from = columns.offsets()[index];
+			int nStudentMarks = columns.marksCount(index);
+			addStudent(columns.ids()[index], columns.names()[index], columns.phones()[index], nStudentMarks);
+			System.arraycopy(columns.subjects(), from, subjects, nMarks, nStudentMarks);
+			System.arraycopy(columns.dates(), from, dates, nMarks, nStudentMarks);
+			System.arraycopy(columns.scores(), from, scores, nMarks, nStudentMarks);
+			nMarks += nStudentMarks;
+		}
+
+		private void addStudent(long id, String name, String phone, int nStudentMarks) {
+			if (nStudents == ids.length) {
+				int capacity = ids.length * 2;
+				ids = Arrays.copyOf(ids, capacity);
+				names = Arrays.copyOf(names, capacity);
+				phones = Arrays.copyOf(phones, capacity);
+				offsets = Arrays.copyOf(offsets, capacity + 1);
+			}
+			if (nMarks + nStudentMarks > scores.length) {
+				int capacity = Math.max(scores.length * 2, nMarks + nStudentMarks);
+				subjects = Arrays.copyOf(subjects, capacity);
+				dates = Arrays.copyOf(dates, capacity);
+				scores = Arrays.copyOf(scores, capacity);
+			}
+			ids[nStudents] = id;
+			names[nStudents] = name;
+			phones[nStudents] = phone;
+			offsets[nStudents] = nMarks;
+			nStudents++;
+		}
+
+		private void addMark(int subject, int date, int score) {
+			subjects[nMarks] = subject;
+			dates[nMarks] = date;
+			scores[nMarks] = score;
+			nMarks++;
+		}
+
+		Columns build() {
+			offsets[nStudents] = nMarks;
+			int[] goodMarksCounts = new int[nStudents];
+			long[] scoreSums = new long[nStudents];
+			for (int i = 0; i < nStudents; i++) {
+				for (int j = offsets[i]; j < offsets[i + 1]; j++) {
+					scoreSums[i] += scores[j];
+					if (scores[j] > StudentDoc.GOOD_SCORE_THRESHOLD) {
+						goodMarksCounts[i]++;
+					}
+				}
+			}
+			return new Columns(Arrays.copyOf(ids, nStudents), Arrays.copyOf(names, nStudents),
+					Arrays.copyOf(phones, nStudents), Arrays.copyOf(offsets, nStudents + 1),
+					Arrays.copyOf(subjects, nMarks), Arrays.copyOf(dates, nMarks), Arrays.copyOf(scores, nMarks),
+					goodMarksCounts, scoreSums);
+		}
+	}
+}
@@ -0,0 +1,48 @@
+package telran.students.service;
+
+import org.springframework.dao.DuplicateKeyException;
+
+import com.mongodb.ErrorCategory;
+import com.mongodb.bulk.BulkWriteError;
+
+import telran.students.dto.BulkItemError;
+import telran.students.dto.BulkItemError.Reason;
+import telran.students.dto.Student;
+
+//a duplicate key of the students is either the id or the phone (unique index phone_unique)
+//the driver reports the violated index only in the server message: "E11000 ... index: phone_unique dup key: ..."
+public final class DuplicateKeys {
+	public static final String PHONE_INDEX = "phone_unique";
+
+	private DuplicateKeys() {
+	}
+
+	public static boolean isPhone(String message) {
+		return message != null && message.contains("index: " + PHONE_INDEX + " ");
+	}
+
+	public static IllegalStateException phoneExists(String phone) {
+		return new IllegalStateException(String.format("Phone %s already belongs to another student", phone));
+	}
+
+	static IllegalStateException studentExists(DuplicateKeyException e, Student student) {
+		return isPhone(e.getMessage()) ? phoneExists(student.phone()) : idExists(student.id());
+	}
+
+	static IllegalStateException idExists(long id) {
+		return new IllegalStateException(String.format("Student %d already exists", id));
+	}
+
+	//error of a bulk insert of the student, the duplicate key is recognized by the error code
+	static BulkItemError toBulkItemError(BulkWriteError error, Student student) {
+		BulkItemError res;
+		if (error.getCategory() != ErrorCategory.DUPLICATE_KEY) {
+			res = new BulkItemError(student.id(), Reason.OTHER, error.getMessage());
+		} else if (isPhone(error.getMessage())) {
+			res = new BulkItemError(student.id(), Reason.DUPLICATE_PHONE, phoneExists(student.phone()).getMessage());
+		} else {
+			res = new BulkItemError(student.id(), Reason.DUPLICATE_ID, idExists(student.id()).getMessage());
+		}
+		return res;
+	}
+}
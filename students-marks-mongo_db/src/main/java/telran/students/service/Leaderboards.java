@@ -0,0 +1,279 @@
+package telran.students.service;
+
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Stream;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.annotation.Order;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PreDestroy;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import telran.students.configuration.StartupOrder;
+import telran.students.dto.Mark;
+import telran.students.dto.Student;
+import telran.students.model.StudentDoc;
+
+//in memory leaderboards of the best (most scores greater than 80) and the worst (least sum of scores) students
+//loaded once and updated incrementally by the writes of the service, so top N is read without database access
+//the writes bypassing the service (generator, direct writes) require reload
+@Component
+@Slf4j
+public class Leaderboards implements ProjectionHandler {
+	private record Entry(Student student, int goodMarksCount, long scoreSum) {
+	}
+
+	private static final Comparator<Entry> BEST_ORDER = Comparator.comparingInt(Entry::goodMarksCount).reversed()
+			.thenComparingLong(entry -> entry.student().id());
+	private static final Comparator<Entry> WORST_ORDER = Comparator.comparingLong(Entry::scoreSum)
+			.thenComparingLong(entry -> entry.student().id());
+
+	final MongoTemplate mongoTemplate;
+	@Getter
+	final boolean enabled;
+	final int checkSize;
+	//with the change stream the leaderboards are updated only by the changes of the documents,
+	//so the writes of the service are not counted twice
+	final boolean changeStreamUpdates;
+	private final Map<Long, Entry> entries = new HashMap<>();
+	//only the students having good marks are in the best leaderboard
+	private final NavigableSet<Entry> best = new TreeSet<>(BEST_ORDER);
+	private final NavigableSet<Entry> worst = new TreeSet<>(WORST_ORDER);
+	private volatile boolean loaded;
+	//a delta of a write is applied only if no student was read from the database since the write began:
+	//the writer takes the generation before the database write, each read increments it after reading,
+	//so for a write of an older generation the read may already count it and the student is read again
+	private volatile long generation;
+	//the reloads are numbered, a newer reload discards the results of an older one
+	private long reloadNumber;
+	private boolean reloading;
+	private final Set<Long> changedIds = new HashSet<>();
+	private final ExecutorService executor = Executors.newSingleThreadExecutor();
+
+	public Leaderboards(MongoTemplate mongoTemplate,
+			@Value("${app.students.leaderboards.enabled:true}") boolean enabled,
+			@Value("${app.students.leaderboards.check-size:100}") int checkSize,
+			@Value("${app.students.change-stream.enabled:false}") boolean changeStreamUpdates) {
+		this.mongoTemplate = mongoTemplate;
+		this.enabled = enabled;
+		this.checkSize = checkSize;
+		this.changeStreamUpdates = changeStreamUpdates;
+	}
+
+	//leaderboards are used only after loading
+	public boolean isReady() {
+		return enabled && loaded;
+	}
+
+	//taken by the writers before the database write
+	public long getGeneration() {
+		return generation;
+	}
+
+	@EventListener(ApplicationReadyEvent.class)
+	@Order(StartupOrder.VIEWS)
+	public void reload() {
+		if (enabled) {
+			long reload;
+			synchronized (this) {
+				reload = ++reloadNumber;
+				loaded = false;
+				reloading = true;
+				changedIds.clear();
+				entries.clear();
+				best.clear();
+				worst.clear();
+			}
+			//the writes during the streaming are not applied, their students are read again
+			List<Entry> loadedEntries;
+			try (Stream<StudentDoc> studentDocs = mongoTemplate.stream(statsQuery(new Criteria()), StudentDoc.class)) {
+				loadedEntries = studentDocs.map(Leaderboards::toEntry).toList();
+			}
+			synchronized (this) {
+				if (reload == reloadNumber) {
+					loadedEntries.forEach(this::put);
+					readChanged();
+					reloading = false;
+					loaded = true;
+					log.info("leaderboards are loaded, {} students", entries.size());
+				}
+			}
+		}
+	}
+
+	public synchronized List<Student> getBest(int nStudents) {
+		return best.stream().limit(nStudents).map(Entry::student).toList();
+	}
+
+	public synchronized List<Student> getWorst(int nStudents) {
+		return worst.stream().limit(nStudents).map(Entry::student).toList();
+	}
+
+	public synchronized void addStudent(Student student, long writeGeneration) {
+		if (isIncremental(student.id(), writeGeneration)) {
+			remove(student.id());
+			put(new Entry(student, 0, 0));
+		}
+	}
+
+	public synchronized void updateStudent(Student student, long writeGeneration) {
+		Entry entry = isIncremental(student.id(), writeGeneration) ? remove(student.id()) : null;
+		if (entry != null) {
+			put(new Entry(student, entry.goodMarksCount(), entry.scoreSum()));
+		}
+	}
+
+	public synchronized void addMarks(long id, List<Mark> marks, long writeGeneration) {
+		//the deltas of concurrent writes are commutative, the marks of removed students are ignored
+		Entry entry = isIncremental(id, writeGeneration) ? remove(id) : null;
+		if (entry != null) {
+			int nGoodMarks = (int) marks.stream().filter(mark -> mark.score() > StudentDoc.GOOD_SCORE_THRESHOLD).count();
+			long scoreSum = marks.stream().mapToLong(Mark::score).sum();
+			put(new Entry(entry.student(), entry.goodMarksCount() + nGoodMarks, entry.scoreSum() + scoreSum));
+		}
+	}
+
+	public synchronized void removeStudent(long id) {
+		//a removal is idempotent, so it's applied whatever is read before
+		if (reloading) {
+			changedIds.add(id);
+		} else if (isReady() && !changeStreamUpdates) {
+			remove(id);
+		}
+	}
+
+	@Override
+	public synchronized void onChanges(List<StudentChange> changes) {
+		//the documents are the current states, so repeated changes are applied idempotently
+		if (changeStreamUpdates && reloading) {
+			changes.forEach(change -> changedIds.add(change.id()));
+		} else if (changeStreamUpdates && isReady()) {
+			changes.forEach(change -> {
+				remove(change.id());
+				if (change.type() == StudentChange.Type.UPSERT) {
+					put(toEntry(change.studentDoc()));
+				}
+			});
+		}
+	}
+
+	@Override
+	public void reset() {
+		reload();
+	}
+
+	private boolean isIncremental(long id, long writeGeneration) {
+		boolean res = false;
+		if (reloading) {
+			changedIds.add(id);
+		} else if (isReady() && !changeStreamUpdates) {
+			res = writeGeneration == generation;
+			if (!res) {
+				changedIds.add(id);
+				executor.execute(this::readChangedIfReady);
+			}
+		}
+		return res;
+	}
+
+	private synchronized void readChangedIfReady() {
+		if (isReady()) {
+			try {
+				readChanged();
+			} catch (RuntimeException e) {
+				//the students stay changed until the next read or reload
+				log.error("leaderboards read of the changed students failed: {}", e.toString());
+			}
+		}
+	}
+
+	//called holding the lock, so no delta is applied between the read and the increment of the generation
+	private void readChanged() {
+		if (!changedIds.isEmpty()) {
+			Set<Long> ids = Set.copyOf(changedIds);
+			List<Entry> readEntries = mongoTemplate.find(statsQuery(Criteria.where("id").in(ids)), StudentDoc.class)
+					.stream().map(Leaderboards::toEntry).toList();
+			changedIds.removeAll(ids);
+			ids.forEach(this::remove);
+			readEntries.forEach(this::put);
+		}
+		generation++;
+	}
+
+	@PreDestroy
+	void shutdown() {
+		executor.shutdownNow();
+	}
+
+	//the leaderboards are compared with the queries on the marks statistics
+	public boolean check(int nStudents) {
+		List<Student> expectedBest = findStudents(StudentsQueries.bestStudents(nStudents));
+		List<Student> expectedWorst = findStudents(StudentsQueries.worstStudents(nStudents));
+		List<Student> actualBest = getBest(nStudents);
+		List<Student> actualWorst = getWorst(nStudents);
+		boolean res = expectedBest.equals(actualBest) && expectedWorst.equals(actualWorst);
+		if (!res) {
+			log.warn("leaderboards differ from the database: best {} expected {}, worst {} expected {}",
+					actualBest, expectedBest, actualWorst, expectedWorst);
+		}
+		return res;
+	}
+
+	@Scheduled(fixedDelayString = "${app.students.leaderboards.check-ms:600000}",
+			initialDelayString = "${app.students.leaderboards.check-ms:600000}")
+	public void checkAndReload() {
+		//the writes may happen between the queries and reading of the leaderboards,
+		//so the check is repeated before reloading
+		if (isReady() && !check(checkSize) && !check(checkSize)) {
+			reload();
+		}
+	}
+
+	private List<Student> findStudents(Query query) {
+		query.fields().include("id", "name", "phone");
+		return mongoTemplate.find(query, StudentDoc.class).stream().map(StudentDoc::build).toList();
+	}
+
+	private static Query statsQuery(Criteria criteria) {
+		Query query = new Query(criteria);
+		query.fields().include("id", "name", "phone", "goodMarksCount", "scoreSum");
+		return query;
+	}
+
+	private static Entry toEntry(StudentDoc studentDoc) {
+		return new Entry(studentDoc.build(), studentDoc.getGoodMarksCount(), studentDoc.getScoreSum());
+	}
+
+	private void put(Entry entry) {
+		entries.put(entry.student().id(), entry);
+		worst.add(entry);
+		if (entry.goodMarksCount() > 0) {
+			best.add(entry);
+		}
+	}
+
+	private Entry remove(long id) {
+		Entry entry = entries.remove(id);
+		if (entry != null) {
+			best.remove(entry);
+			worst.remove(entry);
+		}
+		return entry;
+	}
+}
@@ -0,0 +1,249 @@
+package telran.students.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.domain.Sort.Direction;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.AggregationExpression;
+import org.springframework.data.mongodb.core.aggregation.AggregationOptions;
+import org.springframework.data.mongodb.core.aggregation.ArrayOperators;
+import org.springframework.data.mongodb.core.aggregation.AggregationOperation;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import telran.students.dto.Mark;
+import telran.students.dto.Student;
+import telran.students.model.MarkFields;
+import telran.students.model.MarksBucketDoc;
+import telran.students.model.StudentDoc;
+
+//optional storage of marks in bucket documents (students_marks) instead of the embedded array of StudentDoc
+//a student document keeps name, phone and the marks statistics, so its size doesn't grow with marks
+@Component
+@Slf4j
+public class MarksBuckets {
+	final MongoTemplate mongoTemplate;
+	final MarksUpdates marksUpdates;
+	final TransactionTemplate transactionTemplate;
+	final OptimisticRetries optimisticRetries;
+	@Getter
+	final boolean enabled;
+	final int bucketSize;
+
+	public MarksBuckets(MongoTemplate mongoTemplate, MarksUpdates marksUpdates,
+			TransactionTemplate transactionTemplate, OptimisticRetries optimisticRetries,
+			@Value("${app.students.marks.buckets.enabled:false}") boolean enabled,
+			@Value("${app.students.marks.buckets.size:500}") int bucketSize) {
+		this.mongoTemplate = mongoTemplate;
+		this.marksUpdates = marksUpdates;
+		this.transactionTemplate = transactionTemplate;
+		this.optimisticRetries = optimisticRetries;
+		this.enabled = enabled;
+		this.bucketSize = bucketSize;
+		log.debug("marks buckets enabled {}, bucket size {}", enabled, bucketSize);
+	}
+
+	public void addMarks(long id, List<Mark> marks) {
+		//the marks fill the last bucket of the student and roll over to the new ones, so no bucket exceeds
+		//the bucket size; the last bucket is updated only if its count is as read,
+		//a new bucket is inserted with the next seq, so concurrent writers don't create the same bucket twice
+		int from = 0;
+		while (from < marks.size()) {
+			MarksBucketDoc last = findLastBucket(id);
+			if (last != null && last.getCount() < bucketSize) {
+				int to = Math.min(from + bucketSize - last.getCount(), marks.size());
+				Query query = new Query(Criteria.where("id").is(last.getId()).and("count").is(last.getCount()));
+				if (mongoTemplate.updateFirst(query, pushMarks(marks.subList(from, to)), MarksBucketDoc.class)
+						.getMatchedCount() > 0) {
+					from = to;
+				} else {
+					checkNoTransaction(String.format("bucket %d of student %d is updated concurrently",
+							last.getSeq(), id), null);
+				}
+			} else {
+				int to = Math.min(from + bucketSize, marks.size());
+				if (insertBucket(new MarksBucketDoc(id, last == null ? 0 : last.getSeq() + 1,
+						new ArrayList<>(marks.subList(from, to))))) {
+					from = to;
+				}
+			}
+		}
+	}
+
+	public void addMarks(Map<Long, List<Mark>> marks) {
+		//each student is checked for the free space of the last bucket, the calls are in one transaction
+		//of the bulk write of the statistics (StudentsServiceImpl)
+		marks.forEach(this::addMarks);
+	}
+
+	private MarksBucketDoc findLastBucket(long id) {
+		Query query = new Query(Criteria.where("studentId").is(id)).with(Sort.by(Direction.DESC, "seq"));
+		query.fields().include("id", "seq", "count");
+		return mongoTemplate.findOne(query, MarksBucketDoc.class);
+	}
+
+	private boolean insertBucket(MarksBucketDoc bucket) {
+		boolean res = true;
+		try {
+			mongoTemplate.insert(bucket);
+		} catch (DuplicateKeyException e) {
+			//the bucket is inserted by another writer, the marks go to the inserted bucket
+			checkNoTransaction(String.format("bucket %d of student %d is inserted concurrently", bucket.getSeq(),
+					bucket.getStudentId()), e);
+			res = false;
+		}
+		return res;
+	}
+
+	private static void checkNoTransaction(String message, Exception cause) {
+		//a transaction reads the same snapshot again and a duplicate key aborts it,
+		//so the whole transaction is retried (OptimisticRetries)
+		if (TransactionSynchronizationManager.isActualTransactionActive()) {
+			throw new OptimisticLockingFailureException(message, cause);
+		}
+	}
+
+	public List<Mark> getMarks(long id) {
+		Query query = new Query(Criteria.where("studentId").is(id)).with(Sort.by("seq"));
+		query.fields().include("marks");
+		return flatten(mongoTemplate.find(query, MarksBucketDoc.class));
+	}
+
+	public List<Mark> getMarks(long id, AggregationExpression marksCondition) {
+		//the same condition as for the embedded marks ($$mark is the element of the marks array)
+		Aggregation pipeLine = Aggregation.newAggregation(
+				Aggregation.match(Criteria.where("studentId").is(id)),
+				Aggregation.sort(Sort.by("seq")),
+				Aggregation.project().and(ArrayOperators.Filter.filter("marks").as("mark").by(marksCondition))
+					.as("marks"));
+		return flatten(mongoTemplate.aggregate(pipeLine, MarksBucketDoc.class, MarksBucketDoc.class)
+				.getMappedResults());
+	}
+
+	public void remove(long id) {
+		mongoTemplate.remove(new Query(Criteria.where("studentId").is(id)), MarksBucketDoc.class);
+	}
+
+	//selection of the students by the minimal score of their buckets
+	public record ScoresFilter(Criteria bucketsCriteria, Object scores, Criteria minScoreCriteria) {
+	}
+
+	public ScoresFilter allScoresGreater(int thresholdScore) {
+		//students having the minimal score of all buckets greater than the threshold
+		return new ScoresFilter(new Criteria(), "$" + MarkFields.marks(MarkFields.SCORE),
+				Criteria.where("minScore").gt(thresholdScore));
+	}
+
+	public ScoresFilter allSubjectScoresGreaterEqual(int subjectId, int thresholdScore) {
+		//scores of other subjects are mapped to null, which is ignored by $min
+		Document subjectScores = new Document("$map", new Document("input", "$marks").append("as", "mark")
+				.append("in", new Document("$cond", Arrays.asList(
+						new Document("$eq", List.of("$$mark." + MarkFields.SUBJECT, subjectId)),
+						"$$mark." + MarkFields.SCORE, null))));
+		return new ScoresFilter(Criteria.where(MarkFields.marks(MarkFields.SUBJECT)).is(subjectId), subjectScores,
+				Criteria.where("minScore").gte(thresholdScore));
+	}
+
+	public List<Student> findStudents(ScoresFilter filter, Long afterId, int limit) {
+		//the students after the given id (any if null) sorted by id, limit 0 means no limit
+		Aggregation pipeLine = studentsPipeLine(filter, afterId, limit)
+				.withOptions(AggregationOptions.builder().allowDiskUse(true).build());
+		return mongoTemplate.aggregate(pipeLine, MarksBucketDoc.COLLECTION, StudentDoc.class).getMappedResults()
+				.stream().map(StudentDoc::build).toList();
+	}
+
+	public Stream<Student> streamStudents(ScoresFilter filter, int batchSize) {
+		Aggregation pipeLine = studentsPipeLine(filter, null, 0)
+				.withOptions(AggregationOptions.builder().allowDiskUse(true).cursorBatchSize(batchSize).build());
+		return mongoTemplate.aggregateStream(pipeLine, MarksBucketDoc.COLLECTION, StudentDoc.class)
+				.map(StudentDoc::build);
+	}
+
+	private Aggregation studentsPipeLine(ScoresFilter filter, Long afterId, int limit) {
+		//the students are joined at the server, so no list of the found ids is built by the service;
+		//with keyset paging only the next page of the grouped students is joined
+		Criteria bucketsCriteria = afterId == null ? filter.bucketsCriteria()
+				: new Criteria().andOperator(filter.bucketsCriteria(), Criteria.where("studentId").gt(afterId));
+		AggregationOperation groupMinScore = context -> new Document("$group", new Document("_id", "$studentId")
+				.append("minScore", new Document("$min", new Document("$min", filter.scores()))));
+		List<AggregationOperation> operations = new ArrayList<>(List.of(Aggregation.match(bucketsCriteria),
+				groupMinScore, Aggregation.match(filter.minScoreCriteria()), Aggregation.sort(Sort.by("_id"))));
+		if (limit > 0) {
+			operations.add(Aggregation.limit(limit));
+		}
+		operations.add(Aggregation.lookup(mongoTemplate.getCollectionName(StudentDoc.class), "_id", "_id",
+				"student"));
+		operations.add(Aggregation.unwind("student"));
+		operations.add(Aggregation.replaceRoot("student"));
+		operations.add(Aggregation.project("name", "phone"));
+		return Aggregation.newAggregation(operations);
+	}
+
+	public long migrate() {
+		//moves the embedded marks into buckets while the service may append marks to the buckets:
+		//the statistics are kept, they already count the embedded marks and the appended ones;
+		//each student is moved in a transaction re-reading the marks, so a concurrent write of the student
+		//aborts the transaction and the student is moved again, an interrupted migration leaves no partial buckets
+		Query query = new Query(Criteria.where("marks.0").exists(true));
+		query.fields().include("id");
+		long nStudents = 0;
+		try (Stream<StudentDoc> studentDocs = mongoTemplate.stream(query, StudentDoc.class)) {
+			for (StudentDoc studentDoc : (Iterable<StudentDoc>) studentDocs::iterator) {
+				long id = studentDoc.getId();
+				if (Boolean.TRUE.equals(optimisticRetries.execute(
+						() -> transactionTemplate.execute(status -> migrate(id))))) {
+					nStudents++;
+				}
+			}
+		}
+		log.info("marks of {} students are moved to buckets", nStudents);
+		return nStudents;
+	}
+
+	private boolean migrate(long id) {
+		Query query = new Query(Criteria.where("id").is(id).and("marks.0").exists(true));
+		query.fields().include("id", "marks");
+		StudentDoc studentDoc = mongoTemplate.findOne(query, StudentDoc.class);
+		if (studentDoc != null) {
+			List<Mark> marks = studentDoc.getMarks();
+			//the embedded marks precede the marks appended meanwhile, so their buckets have negative seq
+			List<MarksBucketDoc> buckets = new ArrayList<>();
+			int nBuckets = (marks.size() + bucketSize - 1) / bucketSize;
+			for (int i = 0; i < nBuckets; i++) {
+				buckets.add(new MarksBucketDoc(id, i - nBuckets,
+						marks.subList(i * bucketSize, Math.min((i + 1) * bucketSize, marks.size()))));
+			}
+			mongoTemplate.insertAll(buckets);
+			mongoTemplate.updateFirst(new Query(Criteria.where("id").is(id)),
+					new Update().unset("marks").inc("version", 1), StudentDoc.class);
+		}
+		return studentDoc != null;
+	}
+
+	private Update pushMarks(List<Mark> marks) {
+		Object[] markDocuments = marks.stream()
+				.map(mark -> mongoTemplate.getConverter().convertToMongoType(mark)).toArray();
+		return new Update().push("marks").each(markDocuments).inc("count", marks.size());
+	}
+
+	private static List<Mark> flatten(List<MarksBucketDoc> buckets) {
+		return buckets.stream().filter(bucket -> bucket.getMarks() != null)
+				.flatMap(bucket -> bucket.getMarks().stream()).toList();
+	}
+}
@@ -0,0 +1,75 @@
+package telran.students.service;
+
+import java.util.List;
+
+import org.bson.Document;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.AggregationOperation;
+import org.springframework.data.mongodb.core.aggregation.AggregationUpdate;
+import org.springframework.stereotype.Component;
+
+import lombok.RequiredArgsConstructor;
+import telran.students.dto.Mark;
+import telran.students.model.MarkFields;
+import telran.students.model.StudentDoc;
+
+//pipeline updates adding marks and the marks statistics of StudentDoc in one atomic operation
+@Component
+@RequiredArgsConstructor
+public class MarksUpdates {
+	final MongoTemplate mongoTemplate;
+
+	public AggregationUpdate addMarks(List<Mark> marks) {
+		List<Object> markDocuments = marks.stream()
+				.map(mark -> mongoTemplate.getConverter().convertToMongoType(mark)).toList();
+		Document setMarks = new Document("marks", new Document("$concatArrays",
+				List.of(ifNull("$marks", List.of()), new Document("$literal", markDocuments))));
+		return AggregationUpdate.from(List.of(set(incrementStats(marks, setMarks)), set(avgScore())));
+	}
+
+	//only the statistics are updated, the marks are stored in the buckets (MarksBuckets)
+	public AggregationUpdate addStats(List<Mark> marks) {
+		return AggregationUpdate.from(List.of(set(incrementStats(marks, new Document())), set(avgScore())));
+	}
+
+	private static Document incrementStats(List<Mark> marks, Document fields) {
+		int scoreSum = marks.stream().mapToInt(Mark::score).sum();
+		int nGoodMarks = (int) marks.stream().filter(mark -> mark.score() > StudentDoc.GOOD_SCORE_THRESHOLD).count();
+		return fields.append("marksCount", increment("$marksCount", marks.size()))
+				.append("scoreSum", increment("$scoreSum", scoreSum))
+				.append("goodMarksCount", increment("$goodMarksCount", nGoodMarks))
+				.append("version", increment("$version", 1));
+	}
+
+	//statistics computed from the existing marks, used for backfilling
+	public AggregationUpdate computeStats() {
+		Object marks = ifNull("$marks", List.of());
+		Document setStats = new Document()
+				.append("marksCount", new Document("$size", marks))
+				.append("scoreSum", new Document("$sum", "$" + MarkFields.marks(MarkFields.SCORE)))
+				.append("goodMarksCount", new Document("$size", new Document("$filter",
+						new Document("input", marks).append("cond",
+								new Document("$gt", List.of("$$this." + MarkFields.SCORE, StudentDoc.GOOD_SCORE_THRESHOLD))))))
+				.append("version", increment("$version", 1));
+		return AggregationUpdate.from(List.of(set(setStats), set(avgScore())));
+	}
+
+	private static Document avgScore() {
+		return new Document("avgScore", new Document("$cond", List.of(
+				new Document("$gt", List.of("$marksCount", 0)),
+				new Document("$divide", List.of("$scoreSum", "$marksCount")),
+				0)));
+	}
+
+	private static Document increment(String field, int value) {
+		return new Document("$add", List.of(ifNull(field, 0), value));
+	}
+
+	private static Document ifNull(String field, Object value) {
+		return new Document("$ifNull", List.of(field, value));
+	}
+
+	private static AggregationOperation set(Document fields) {
+		return context -> new Document("$set", fields);
+	}
+}
@@ -0,0 +1,84 @@
+package telran.students.service;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Supplier;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.stereotype.Component;
+
+import com.mongodb.MongoException;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+//bounded retries of the read-modify-write operations failed by a concurrent update of the same document:
+//a conditional update not matching the read version or a transaction aborted by a write conflict
+@Component
+@Slf4j
+public class OptimisticRetries {
+	private final int maxAttempts;
+	private final long backoffMillis;
+	private final Counter retries;
+	private final Counter failures;
+
+	public OptimisticRetries(MeterRegistry meterRegistry,
+			@Value("${app.students.optimistic.max-attempts:5}") int maxAttempts,
+			@Value("${app.students.optimistic.backoff-ms:2}") long backoffMillis) {
+		if (maxAttempts < 1) {
+			throw new IllegalArgumentException("max attempts should be positive");
+		}
+		this.maxAttempts = maxAttempts;
+		this.backoffMillis = backoffMillis;
+		retries = meterRegistry.counter("students.optimistic.retries");
+		failures = meterRegistry.counter("students.optimistic.failures");
+	}
+
+	public <T> T execute(Supplier<T> operation) {
+		int attempt = 1;
+		T res = null;
+		boolean done = false;
+		while (!done) {
+			try {
+				res = operation.get();
+				done = true;
+			} catch (RuntimeException e) {
+				if (!isConflict(e)) {
+					throw e;
+				}
+				if (attempt == maxAttempts) {
+					failures.increment();
+					log.warn("conflict not resolved after {} attempts: {}", attempt, e.getMessage());
+					throw e;
+				}
+				retries.increment();
+				log.debug("attempt {} conflicted: {}", attempt, e.getMessage());
+				backoff(attempt++, e);
+			}
+		}
+		return res;
+	}
+
+	static boolean isConflict(RuntimeException e) {
+		boolean res = e instanceof OptimisticLockingFailureException;
+		for (Throwable cause = e; !res && cause != null; cause = cause.getCause()) {
+			res = cause instanceof MongoException mongoException
+					&& mongoException.hasErrorLabel(MongoException.TRANSIENT_TRANSACTION_ERROR_LABEL);
+		}
+		return res;
+	}
+
+	private void backoff(int attempt, RuntimeException e) {
+		//random jitter prevents the conflicting writers from retrying in lockstep
+		long delay = backoffMillis > 0 ? ThreadLocalRandom.current().nextLong(backoffMillis * attempt + 1) : 0;
+		if (delay > 0) {
+			try {
+				Thread.sleep(delay);
+			} catch (InterruptedException ie) {
+				Thread.currentThread().interrupt();
+				throw e;
+			}
+		}
+	}
+}
@@ -0,0 +1,13 @@
+package telran.students.service;
+
+import java.util.List;
+
+//derived read model updated by the changes of the students collection (ChangeStreamProjector)
+//the changes are delivered at least once, so the handling should be idempotent
+public interface ProjectionHandler {
+	void onChanges(List<StudentChange> changes);
+
+	//called when the changes may be lost (the resume token is expired), the projection should be rebuilt
+	default void reset() {
+	}
+}
@@ -0,0 +1,174 @@
+package telran.students.service;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.extern.slf4j.Slf4j;
+
+//LRU cache of the analytics query results keyed by method and arguments
+//an entry is valid only for the write epoch it was computed at, each write of the students bumps the epoch
+//after the write is done, so the stale entries are never returned and are evicted lazily;
+//memory is bounded by the total weight of the entries (number of elements of a collection result, 1 otherwise)
+@Component
+@Slf4j
+public class QueryResultsCache implements MeterBinder, ProjectionHandler {
+	private record Key(String method, List<Object> args) {
+	}
+
+	private record Entry(long epoch, Object result, int weight, long computeNanos) {
+	}
+
+	private final boolean enabled;
+	private final long maxWeight;
+	private final Map<Key, Entry> results = new LinkedHashMap<>(16, 0.75f, true);
+	private final AtomicLong epoch = new AtomicLong();
+	private long weight;
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong evictions = new AtomicLong();
+	private final AtomicLong savedNanos = new AtomicLong();
+
+	public QueryResultsCache(@Value("${app.students.query-cache.enabled:true}") boolean enabled,
+			@Value("${app.students.query-cache.max-weight:100000}") long maxWeight) {
+		this.enabled = enabled;
+		this.maxWeight = maxWeight;
+		log.debug("query results cache enabled {}, max weight {}", enabled, maxWeight);
+	}
+
+	@SuppressWarnings("unchecked")
+	public <T> T get(String method, List<Object> args, Supplier<T> query) {
+		if (!enabled) {
+			return query.get();
+		}
+		Key key = new Key(method, args);
+		Entry entry = getEntry(key);
+		T res = null;
+		if (entry != null) {
+			hits.incrementAndGet();
+			savedNanos.addAndGet(entry.computeNanos());
+			res = (T) entry.result();
+		} else {
+			misses.incrementAndGet();
+			//the epoch is taken before the query: a write during the query makes the result stale
+			long queryEpoch = epoch.get();
+			long start = System.nanoTime();
+			res = query.get();
+			put(key, new Entry(queryEpoch, res, weightOf(res), System.nanoTime() - start));
+		}
+		return res;
+	}
+
+	private synchronized Entry getEntry(Key key) {
+		Entry entry = results.get(key);
+		if (entry != null && entry.epoch() != epoch.get()) {
+			remove(key);
+			entry = null;
+		}
+		return entry;
+	}
+
+	private synchronized void put(Key key, Entry entry) {
+		if (entry.epoch() == epoch.get() && entry.weight() <= maxWeight) {
+			remove(key);
+			results.put(key, entry);
+			weight += entry.weight();
+			var iterator = results.entrySet().iterator();
+			while (weight > maxWeight) {
+				Entry eldest = iterator.next().getValue();
+				iterator.remove();
+				weight -= eldest.weight();
+				evictions.incrementAndGet();
+			}
+		}
+	}
+
+	private void remove(Key key) {
+		Entry entry = results.remove(key);
+		if (entry != null) {
+			weight -= entry.weight();
+		}
+	}
+
+	private static int weightOf(Object result) {
+		return result instanceof Collection<?> collection ? Math.max(collection.size(), 1) : 1;
+	}
+
+	public void bumpEpoch() {
+		epoch.incrementAndGet();
+	}
+
+	public synchronized void clear() {
+		bumpEpoch();
+		results.clear();
+		weight = 0;
+	}
+
+	@Override
+	public void onChanges(List<StudentChange> changes) {
+		//writes of other application instances
+		bumpEpoch();
+	}
+
+	@Override
+	public void reset() {
+		clear();
+	}
+
+	public synchronized int size() {
+		return results.size();
+	}
+
+	public synchronized long getWeight() {
+		return weight;
+	}
+
+	public long getHits() {
+		return hits.get();
+	}
+
+	public long getMisses() {
+		return misses.get();
+	}
+
+	public long getEvictions() {
+		return evictions.get();
+	}
+
+	public double getSavedSeconds() {
+		return (double) savedNanos.get() / TimeUnit.SECONDS.toNanos(1);
+	}
+
+	public double getHitRatio() {
+		long nHits = hits.get();
+		long nGets = nHits + misses.get();
+		return nGets == 0 ? 0 : (double) nHits / nGets;
+	}
+
+	@Override
+	public void bindTo(MeterRegistry registry) {
+		FunctionCounter.builder("students.query-cache.gets", this, QueryResultsCache::getHits).tag("result", "hit")
+			.register(registry);
+		FunctionCounter.builder("students.query-cache.gets", this, QueryResultsCache::getMisses).tag("result", "miss")
+			.register(registry);
+		FunctionCounter.builder("students.query-cache.evictions", this, QueryResultsCache::getEvictions)
+			.register(registry);
+		//sum of the query times of the results returned from the cache
+		FunctionCounter.builder("students.query-cache.saved", this, QueryResultsCache::getSavedSeconds)
+			.baseUnit("seconds").register(registry);
+		Gauge.builder("students.query-cache.hit.ratio", this, QueryResultsCache::getHitRatio).register(registry);
+		Gauge.builder("students.query-cache.size", this, QueryResultsCache::size).register(registry);
+		Gauge.builder("students.query-cache.weight", this, QueryResultsCache::getWeight).register(registry);
+	}
+}
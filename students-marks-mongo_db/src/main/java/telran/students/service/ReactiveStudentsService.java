@@ -0,0 +1,32 @@
+package telran.students.service;
+
+import java.time.LocalDate;
+import java.util.List;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import telran.students.dto.*;
+
+//non-blocking counterpart of StudentsService, enabled by app.students.reactive.enabled=true
+public interface ReactiveStudentsService {
+Mono<Student> getStudent(long id);
+Mono<Student> addStudent(Student student);
+Mono<Student> updatePhone(long id, String phone);
+Mono<List<Mark>> addMark(long id, Mark mark);
+Mono<Student> removeStudent(long id);
+Mono<List<Mark>> getMarks(long id);
+
+//empty Mono if there is no student with the phone number
+Mono<Student> getStudentByPhone(String phoneNumber);
+Flux<Student> getStudentsByPhonePrefix(String phonePrefix);
+Flux<Student> getStudentsAllGoodMarks(int thresholdScore);
+Flux<Student> getStudentsFewMarks(int thresholdMarks);
+Flux<Student> getStudentsAllGoodMarksSubject(String subject, int thresholdScore);
+Flux<Student> getStudentsMarksAmountBetween(int min, int max);
+
+Flux<Mark> getStudentSubjectMarks(long id, String subject);
+Flux<NameAvgScore> getStudentAvgScoreGreater(int avgScoreThreshold);
+Flux<Mark> getStudentMarksAtDates(long id, LocalDate from, LocalDate to);
+Flux<Student> getBestStudents(int nStudents);
+Flux<Student> getWorstStudents(int nStudents);
+}
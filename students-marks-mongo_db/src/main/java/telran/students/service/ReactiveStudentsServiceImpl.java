@@ -0,0 +1,262 @@
+package telran.students.service;
+
+import java.time.LocalDate;
+import java.util.Comparator;
+import java.util.List;
+
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.AggregationExpression;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+import telran.exceptions.NotFoundException;
+import telran.students.dto.Mark;
+import telran.students.dto.NameAvgScore;
+import telran.students.dto.Student;
+import telran.students.model.StudentDoc;
+
+@Service
+@ConditionalOnProperty(name = "app.students.reactive.enabled", havingValue = "true")
+@Slf4j
+@RequiredArgsConstructor
+public class ReactiveStudentsServiceImpl implements ReactiveStudentsService {
+final ReactiveMongoTemplate reactiveMongoTemplate;
+final StudentsCache studentsCache;
+final MarksUpdates marksUpdates;
+final AvgScoresView avgScoresView;
+final MarksBuckets marksBuckets;
+final SubjectsDictionary subjectsDictionary;
+final Leaderboards leaderboards;
+//the results of the blocking service are invalidated by the reactive writes
+final QueryResultsCache queryResultsCache;
+final ColumnarSnapshot columnarSnapshot;
+@Value("${app.students.phone-prefix.max-results:1000}")
+int phonePrefixMaxResults;
+
+	@PostConstruct
+	void checkMarksStorage() {
+		if (marksBuckets.isEnabled()) {
+			throw new IllegalStateException("reactive students service supports only embedded marks");
+		}
+	}
+
+	@Override
+	public Mono<Student> getStudent(long id) {
+		return Mono.fromSupplier(() -> studentsCache.get(id))
+				.switchIfEmpty(Mono.defer(() -> {
+					long generation = studentsCache.getGeneration();
+					return reactiveMongoTemplate.findOne(noMarksQuery(idCriteria(id)), StudentDoc.class)
+							.map(StudentDoc::build)
+							.doOnNext(student -> studentsCache.put(student, generation));
+				}))
+				.switchIfEmpty(notFound(id));
+	}
+
+	@Override
+	public Mono<Student> addStudent(Student student) {
+		//existence of the student is checked by the unique indexes of _id and phone
+		//the generation of the leaderboards is taken at subscription, before the write
+		return Mono.defer(() -> {
+			long generation = leaderboards.getGeneration();
+			return reactiveMongoTemplate.insert(StudentDoc.of(student))
+					.onErrorMap(DuplicateKeyException.class, e -> DuplicateKeys.studentExists(e, student))
+					.map(studentDoc -> student)
+					.doOnNext(s -> {
+						studentsCache.invalidate(s.id());
+						columnarSnapshot.markDirty(s.id());
+						queryResultsCache.bumpEpoch();
+						leaderboards.addStudent(s, generation);
+						log.debug("saved {}", s);
+					});
+		});
+	}
+
+	@Override
+	public Mono<Student> updatePhone(long id, String phone) {
+		//single atomic update, the version is incremented for the conditional updates of the blocking service
+		return Mono.defer(() -> {
+			long generation = leaderboards.getGeneration();
+			return reactiveMongoTemplate.findAndModify(noMarksQuery(idCriteria(id)),
+					new Update().set("phone", phone).inc("version", 1),
+					FindAndModifyOptions.options().returnNew(true), StudentDoc.class)
+					.onErrorMap(DuplicateKeyException.class, e -> DuplicateKeys.phoneExists(phone))
+					.switchIfEmpty(notFound(id))
+					.map(StudentDoc::build)
+					.doOnNext(student -> {
+						studentsCache.invalidate(id);
+						columnarSnapshot.markDirty(id);
+						queryResultsCache.bumpEpoch();
+						leaderboards.updateStudent(student, generation);
+						log.debug("student {}, new phone number {}", id, phone);
+					});
+		});
+	}
+
+	@Override
+	public Mono<List<Mark>> addMark(long id, Mark mark) {
+		Query query = new Query(idCriteria(id));
+		query.fields().include("marks");
+		//the conversion of the mark may add the subject to the dictionary by the blocking driver
+		return Mono.defer(() -> {
+			long generation = leaderboards.getGeneration();
+			return Mono.fromCallable(() -> marksUpdates.addMarks(List.of(mark))).subscribeOn(Schedulers.boundedElastic())
+					.flatMap(update -> reactiveMongoTemplate.findAndModify(query, update,
+							FindAndModifyOptions.options().returnNew(true), StudentDoc.class))
+					.switchIfEmpty(notFound(id))
+					.map(StudentDoc::getMarks)
+					.doOnNext(marks -> {
+						avgScoresView.markDirty(id);
+						columnarSnapshot.markDirty(id);
+						queryResultsCache.bumpEpoch();
+						leaderboards.addMarks(id, List.of(mark), generation);
+						log.debug("student {}, added mark {}", id, mark);
+					});
+		});
+	}
+
+	@Override
+	public Mono<Student> removeStudent(long id) {
+		return reactiveMongoTemplate.findAndRemove(noMarksQuery(idCriteria(id)), StudentDoc.class)
+				.switchIfEmpty(notFound(id))
+				.map(StudentDoc::build)
+				.flatMap(student -> Mono.fromRunnable(() -> {
+					studentsCache.invalidate(id);
+					//the view is updated by the blocking template
+					avgScoresView.remove(id);
+					columnarSnapshot.markDirty(id);
+					queryResultsCache.bumpEpoch();
+					leaderboards.removeStudent(id);
+				}).subscribeOn(Schedulers.boundedElastic()).thenReturn(student))
+				.doOnNext(student -> log.debug("removed student {}", id));
+	}
+
+	@Override
+	public Mono<List<Mark>> getMarks(long id) {
+		Query query = new Query(idCriteria(id));
+		query.fields().include("marks");
+		return reactiveMongoTemplate.findOne(query, StudentDoc.class)
+				.switchIfEmpty(notFound(id))
+				.map(StudentDoc::getMarks);
+	}
+
+	@Override
+	public Mono<Student> getStudentByPhone(String phoneNumber) {
+		return Mono.fromSupplier(() -> studentsCache.getByPhone(phoneNumber))
+				.switchIfEmpty(Mono.defer(() -> {
+					long generation = studentsCache.getGeneration();
+					return reactiveMongoTemplate
+							.findOne(noMarksQuery(Criteria.where("phone").is(phoneNumber)), StudentDoc.class)
+							.map(StudentDoc::build)
+							.doOnNext(student -> studentsCache.put(student, generation));
+				}));
+	}
+
+	@Override
+	public Flux<Student> getStudentsByPhonePrefix(String phonePrefix) {
+		return findStudents(noMarksQuery(StudentsQueries.phonePrefix(phonePrefix, null))
+				.with(Sort.by("phone")).limit(phonePrefixMaxResults));
+	}
+
+	@Override
+	public Flux<Student> getStudentsAllGoodMarks(int thresholdScore) {
+		return findStudents(StudentsQueries.allGoodMarks(thresholdScore));
+	}
+
+	@Override
+	public Flux<Student> getStudentsFewMarks(int thresholdMarks) {
+		return findStudents(StudentsQueries.fewMarks(thresholdMarks));
+	}
+
+	@Override
+	public Flux<Student> getStudentsAllGoodMarksSubject(String subject, int thresholdScore) {
+		return findSubjectId(subject).flatMapMany(subjectId ->
+				findStudents(StudentsQueries.allGoodMarksSubject(subjectId, thresholdScore)));
+	}
+
+	@Override
+	public Flux<Student> getStudentsMarksAmountBetween(int min, int max) {
+		return findStudents(StudentsQueries.marksAmountBetween(min, max));
+	}
+
+	@Override
+	public Flux<Mark> getStudentSubjectMarks(long id, String subject) {
+		return findSubjectId(subject).flatMap(subjectId -> findStudentMarks(id, StudentsQueries.subjectMarks(subjectId)))
+				.flatMapIterable(marks -> marks);
+	}
+
+	private Mono<Integer> findSubjectId(String subject) {
+		//the dictionary reads the database by the blocking driver for the subjects missing in memory
+		return Mono.fromCallable(() -> subjectsDictionary.findId(subject)).subscribeOn(Schedulers.boundedElastic());
+	}
+
+	@Override
+	public Flux<NameAvgScore> getStudentAvgScoreGreater(int avgScoreThreshold) {
+		return reactiveMongoTemplate.find(AvgScoresView.avgScoreGreaterQuery(avgScoreThreshold), Document.class,
+				AvgScoresView.COLLECTION).map(AvgScoresView::toNameAvgScore);
+	}
+
+	@Override
+	public Flux<Mark> getStudentMarksAtDates(long id, LocalDate from, LocalDate to) {
+		return findStudentMarks(id, StudentsQueries.marksAtDates(from, to))
+				.flatMapIterable(marks -> marks.stream().sorted(Comparator.comparing(Mark::date).reversed()).toList());
+	}
+
+	private Mono<List<Mark>> findStudentMarks(long id, AggregationExpression marksCondition) {
+		return reactiveMongoTemplate.aggregate(StudentsQueries.studentMarks(id, marksCondition), StudentDoc.class,
+				StudentDoc.class)
+				.next()
+				.switchIfEmpty(notFound(id))
+				.map(studentDoc -> studentDoc.getMarks() == null ? List.<Mark>of() : studentDoc.getMarks());
+	}
+
+	@Override
+	public Flux<Student> getBestStudents(int nStudents) {
+		return leaderboards.isReady() ? Flux.fromIterable(leaderboards.getBest(nStudents))
+				: findStudents(noMarks(StudentsQueries.bestStudents(nStudents)));
+	}
+
+	@Override
+	public Flux<Student> getWorstStudents(int nStudents) {
+		return leaderboards.isReady() ? Flux.fromIterable(leaderboards.getWorst(nStudents))
+				: findStudents(noMarks(StudentsQueries.worstStudents(nStudents)));
+	}
+
+	private Flux<Student> findStudents(Criteria criteria) {
+		return findStudents(noMarksQuery(criteria).with(Sort.by("id")));
+	}
+
+	private Flux<Student> findStudents(Query query) {
+		return reactiveMongoTemplate.find(query, StudentDoc.class).map(StudentDoc::build);
+	}
+
+	private static Query noMarksQuery(Criteria criteria) {
+		return noMarks(new Query(criteria));
+	}
+
+	private static Query noMarks(Query query) {
+		query.fields().include("id", "name", "phone");
+		return query;
+	}
+
+	private static Criteria idCriteria(long id) {
+		return Criteria.where("id").is(id);
+	}
+
+	private static <T> Mono<T> notFound(long id) {
+		return Mono.error(() -> new NotFoundException(String.format("Student %d not found", id)));
+	}
+}
@@ -0,0 +1,11 @@
+package telran.students.service;
+
+import telran.students.model.StudentDoc;
+
+//change of a student document delivered by the change stream (ChangeStreamProjector)
+//studentDoc is the current state without marks, null for the deleted students
+public record StudentChange(Type type, long id, StudentDoc studentDoc) {
+	public enum Type {
+		UPSERT, DELETE
+	}
+}
@@ -0,0 +1,161 @@
+package telran.students.service;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.extern.slf4j.Slf4j;
+import telran.students.dto.Student;
+
+//bounded LRU cache of students without marks, phone is a secondary key
+//read-through: a student read from the database after a miss is put with the generation taken before the read,
+//each invalidation increments the generation, so a student read before a concurrent write is not cached
+@Component
+@Slf4j
+public class StudentsCache implements MeterBinder, ProjectionHandler {
+	private record Entry(Student student, long expirationTime) {
+	}
+
+	private final boolean enabled;
+	private final int maxSize;
+	private final long ttlNanos;
+	private final Map<Long, Entry> students;
+	private final Map<String, Long> phoneIds = new HashMap<>();
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong evictions = new AtomicLong();
+	private long generation;
+
+	public StudentsCache(@Value("${app.students.cache.enabled:true}") boolean enabled,
+			@Value("${app.students.cache.max-size:10000}") int maxSize,
+			@Value("${app.students.cache.ttl-seconds:300}") long ttlSeconds) {
+		this.enabled = enabled;
+		this.maxSize = maxSize;
+		this.ttlNanos = TimeUnit.SECONDS.toNanos(ttlSeconds);
+		students = new LinkedHashMap<>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Long, Entry> eldest) {
+				boolean res = size() > StudentsCache.this.maxSize;
+				if (res) {
+					phoneIds.remove(eldest.getValue().student().phone(), eldest.getKey());
+					evictions.incrementAndGet();
+				}
+				return res;
+			}
+		};
+		log.debug("students cache enabled {}, max size {}, ttl {} seconds", enabled, maxSize, ttlSeconds);
+	}
+
+	public synchronized Student get(long id) {
+		Student res = null;
+		if (enabled) {
+			Entry entry = students.get(id);
+			if (entry != null && entry.expirationTime() - System.nanoTime() < 0) {
+				remove(id);
+				evictions.incrementAndGet();
+				entry = null;
+			}
+			if (entry == null) {
+				misses.incrementAndGet();
+			} else {
+				hits.incrementAndGet();
+				res = entry.student();
+			}
+		}
+		return res;
+	}
+
+	public synchronized Student getByPhone(String phone) {
+		Long id = enabled ? phoneIds.get(phone) : null;
+		Student res = null;
+		if (id == null) {
+			if (enabled) {
+				misses.incrementAndGet();
+			}
+		} else {
+			res = get(id);
+		}
+		return res;
+	}
+
+	public synchronized long getGeneration() {
+		return generation;
+	}
+
+	public synchronized void put(Student student, long readGeneration) {
+		if (enabled && readGeneration == generation) {
+			remove(student.id());
+			students.put(student.id(), new Entry(student, System.nanoTime() + ttlNanos));
+			if (student.phone() != null) {
+				phoneIds.put(student.phone(), student.id());
+			}
+		}
+	}
+
+	public synchronized void invalidate(long id) {
+		generation++;
+		remove(id);
+	}
+
+	public synchronized void clear() {
+		generation++;
+		students.clear();
+		phoneIds.clear();
+	}
+
+	@Override
+	public synchronized void onChanges(List<StudentChange> changes) {
+		generation++;
+		changes.forEach(change -> remove(change.id()));
+	}
+
+	@Override
+	public void reset() {
+		clear();
+	}
+
+	private void remove(long id) {
+		Entry entry = students.remove(id);
+		if (entry != null && entry.student().phone() != null) {
+			phoneIds.remove(entry.student().phone(), id);
+		}
+	}
+
+	public synchronized int size() {
+		return students.size();
+	}
+
+	public long getHits() {
+		return hits.get();
+	}
+
+	public long getMisses() {
+		return misses.get();
+	}
+
+	public long getEvictions() {
+		return evictions.get();
+	}
+
+	@Override
+	public void bindTo(MeterRegistry registry) {
+		FunctionCounter.builder("students.cache.gets", this, StudentsCache::getHits).tag("result", "hit")
+			.register(registry);
+		FunctionCounter.builder("students.cache.gets", this, StudentsCache::getMisses).tag("result", "miss")
+			.register(registry);
+		FunctionCounter.builder("students.cache.evictions", this, StudentsCache::getEvictions).register(registry);
+		Gauge.builder("students.cache.size", this, StudentsCache::size).register(registry);
+	}
+}
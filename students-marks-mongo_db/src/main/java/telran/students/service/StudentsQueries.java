@@ -0,0 +1,154 @@
+package telran.students.service;
+
+import static telran.students.model.MarkFields.*;
+
+import java.time.LocalDate;
+import java.util.List;
+
+import org.bson.Document;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.domain.Sort.Direction;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.AggregationExpression;
+import org.springframework.data.mongodb.core.aggregation.AggregationOperation;
+import org.springframework.data.mongodb.core.aggregation.ArrayOperators;
+import org.springframework.data.mongodb.core.aggregation.BooleanOperators;
+import org.springframework.data.mongodb.core.aggregation.ComparisonOperators;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+
+import telran.students.dto.StatsPeriod;
+
+//criteria of the students list queries, shared by the list, stream and page variants
+final class StudentsQueries {
+	private static final long MILLIS_PER_DAY = 86_400_000;
+
+	private StudentsQueries() {
+	}
+
+	static Criteria allGoodMarks(int thresholdScore) {
+		//the positive condition is on marks.score, so the bounds of the marks_score index are applied
+		return new Criteria().andOperator(Criteria.where(marks(SCORE)).gt(thresholdScore),
+				Criteria.where("marks").not().elemMatch(Criteria.where(SCORE).lte(thresholdScore)));
+	}
+
+	static Criteria fewMarks(int thresholdMarks) {
+		return Criteria.where("marksCount").lt(thresholdMarks);
+	}
+
+	static Criteria allGoodMarksSubject(int subjectId, int thresholdScore) {
+		//$elemMatch on subject and score is served by the marks_subject_score index
+		return new Criteria().andOperator(
+				Criteria.where("marks").elemMatch(Criteria.where(SUBJECT).is(subjectId).and(SCORE).gte(thresholdScore)),
+				Criteria.where("marks").not().elemMatch(Criteria.where(SUBJECT).is(subjectId).and(SCORE).lt(thresholdScore)));
+	}
+
+	static Criteria marksAmountBetween(int min, int max) {
+		return Criteria.where("marksCount").gte(min).lte(max);
+	}
+
+	static Criteria phonePrefix(String phonePrefix, String afterPhone) {
+		//prefix is converted to range of the phone index instead of regex:
+		//phone > prefix (at least one symbol after prefix) and phone < the next prefix
+		//keyset continuation: next page starts after the last phone of the previous page
+		String lowerBound = afterPhone != null && afterPhone.compareTo(phonePrefix) > 0 ? afterPhone : phonePrefix;
+		Criteria criteria = Criteria.where("phone").gt(lowerBound);
+		String upperBound = getPrefixUpperBound(phonePrefix);
+		if (upperBound != null) {
+			criteria.lt(upperBound);
+		}
+		return criteria;
+	}
+
+	static Aggregation studentMarks(long id, AggregationExpression marksCondition) {
+		//single round trip: one document with the filtered marks, no document if there is no such student
+		return Aggregation.newAggregation(Aggregation.match(Criteria.where("id").is(id)),
+				Aggregation.project().and(ArrayOperators.Filter.filter("marks").as("mark").by(marksCondition))
+					.as("marks"));
+	}
+
+	static AggregationExpression subjectMarks(int subjectId) {
+		return ComparisonOperators.Eq.valueOf("mark." + SUBJECT).equalToValue(subjectId);
+	}
+
+	static AggregationExpression marksAtDates(LocalDate from, LocalDate to) {
+		//values inside aggregation expressions are not converted by the mapping,
+		//so the dates are passed in the stored form (epoch days)
+		return BooleanOperators.And.and(
+				ComparisonOperators.Gte.valueOf("mark." + DATE).greaterThanEqualToValue(from.toEpochDay()),
+				ComparisonOperators.Lte.valueOf("mark." + DATE).lessThanEqualToValue(to.toEpochDay()));
+	}
+
+	static Aggregation marksStats(LocalDate from, LocalDate to, StatsPeriod period, int binWidth) {
+		//the stages are raw documents: the stored fields of the marks are not properties of Mark
+		//$elemMatch on the date range is served by the marks_d index of the students or of the buckets
+		//(IndexesManager), only the marks in the range are projected and unwound;
+		//the marks are grouped by subject, period and score bin (as $bucket with equal boundaries would do),
+		//then the bins are grouped by subject and period, so the result size doesn't depend on the number of marks
+		Object dateRange = new Document("$gte", from.toEpochDay()).append("$lte", to.toEpochDay());
+		Object inRange = new Document("$and", List.of(
+				new Document("$gte", List.of("$$this." + DATE, from.toEpochDay())),
+				new Document("$lte", List.of("$$this." + DATE, to.toEpochDay()))));
+		String score = "$" + marks(SCORE);
+		Object bin = new Document("$subtract", List.of(score, new Document("$mod", List.of(score, binWidth))));
+		return Aggregation.newAggregation(
+				stage("$match", new Document("marks", new Document("$elemMatch", new Document(DATE, dateRange)))),
+				stage("$project", new Document("_id", 0).append("marks",
+						new Document("$filter", new Document("input", "$marks").append("cond", inRange)))),
+				stage("$unwind", "$marks"),
+				stage("$group", new Document("_id", new Document(SUBJECT, "$" + marks(SUBJECT))
+							.append("p", periodStart("$" + marks(DATE), period)).append("b", bin))
+						.append("count", new Document("$sum", 1))
+						.append("sum", new Document("$sum", score))
+						.append("min", new Document("$min", score))
+						.append("max", new Document("$max", score))),
+				stage("$group", new Document("_id", new Document(SUBJECT, "$_id." + SUBJECT).append("p", "$_id.p"))
+						.append("count", new Document("$sum", "$count"))
+						.append("sum", new Document("$sum", "$sum"))
+						.append("min", new Document("$min", "$min"))
+						.append("max", new Document("$max", "$max"))
+						.append("bins", new Document("$push", new Document("b", "$_id.b").append("c", "$count")))));
+	}
+
+	private static Object periodStart(String epochDay, StatsPeriod period) {
+		//epoch day of the period start: MongoDB 4.4 has no $dateTrunc
+		Object date = new Document("$toDate", new Document("$multiply", List.of(epochDay, MILLIS_PER_DAY)));
+		return switch (period) {
+			case DAY -> epochDay;
+			//1970-01-05 (epoch day 4) is Monday
+			case WEEK -> new Document("$subtract", List.of(epochDay,
+					new Document("$mod", List.of(new Document("$add", List.of(epochDay, 3)), 7))));
+			case MONTH -> toEpochDay(new Document("$dateFromParts",
+					new Document("year", new Document("$year", date)).append("month", new Document("$month", date))));
+			case YEAR -> toEpochDay(new Document("$dateFromParts", new Document("year", new Document("$year", date))));
+		};
+	}
+
+	private static Object toEpochDay(Object date) {
+		return new Document("$toLong", new Document("$divide", List.of(new Document("$toLong", date), MILLIS_PER_DAY)));
+	}
+
+	private static AggregationOperation stage(String name, Object value) {
+		return context -> new Document(name, value);
+	}
+
+	static Query bestStudents(int nStudents) {
+		//the number of good scores is maintained on each mark write, so the query is a sort on the index
+		return new Query(Criteria.where("goodMarksCount").gt(0))
+				.with(Sort.by(Direction.DESC, "goodMarksCount").and(Sort.by("id"))).limit(nStudents);
+	}
+
+	static Query worstStudents(int nStudents) {
+		return new Query().with(Sort.by("scoreSum", "id")).limit(nStudents);
+	}
+
+	static String getPrefixUpperBound(String prefix) {
+		//the least string greater than any string starting with prefix, null if there is no such string
+		//phone numbers are ASCII, so the order of Java strings is the same as the order of MongoDB strings
+		int index = prefix.length() - 1;
+		while (index >= 0 && prefix.charAt(index) == Character.MAX_VALUE) {
+			index--;
+		}
+		return index < 0 ? null : prefix.substring(0, index) + (char) (prefix.charAt(index) + 1);
+	}
+}
@@ -2,6 +2,8 @@ package telran.students.service;
 
 import java.time.LocalDate;
 import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
 
 import telran.students.dto.*;
 
@@ -10,11 +12,19 @@ Student getStudent(long id);
 Student addStudent(Student student);
 Student updatePhone(long id, String phone);
 List<Mark> addMark(long id, Mark mark);
+//acknowledged-only variant of addMark: the updated marks are not read back
+void appendMark(long id, Mark mark);
 Student removeStudent(long id);
+//batch variants for imports: one unordered bulk write per batch,
+//failed items are reported in the result instead of failing the whole call
+BulkResult addStudents(List<Student> students);
+BulkResult addMarks(Map<Long, List<Mark>> marks);
 List<Mark> getMarks(long id);
 
 Student getStudentByPhone(String phoneNumber);
 List<Student> getStudentsByPhonePrefix(String phonePrefix);
+//page of students sorted by phone, afterPhone is the last phone of the previous page (null for the first page)
+List<Student> getStudentsByPhonePrefix(String phonePrefix, String afterPhone, int limit);
 List<Student> getStudentsAllGoodMarks(int thresholdScore);
 List<Student> getStudentsFewMarks(int thresholdMarks);
 // HW #74
@@ -33,10 +43,32 @@ List<Mark> getStudentSubjectMarks(long id, String subject);
 
 /****************************************************************/
 List<NameAvgScore> getStudentAvgScoreGreater(int avgScoreThreshold);
+//average scores of the students from the materialized view together with its staleness
+AvgScoreReport getStudentAvgScoreReport(int avgScoreThreshold);
 
 //HW #75
 List<Mark> getStudentMarksAtDates(long id, LocalDate from, LocalDate to);
 List<Student> getBestStudents(int nStudents);
 List<Student> getWorstStudents(int nStudents);
 
+/****************************************************************/
+//count, mean, min/max and histogram (bins of binWidth points) of the scores of the marks at the dates
+//from - to (inclusive) for each subject and period, sorted by subject and period start
+List<SubjectPeriodStats> getMarksStats(LocalDate from, LocalDate to, StatsPeriod period, int binWidth);
+
+/****************************************************************/
+//cursor backed variants of the list methods: the memory doesn't depend on the number of students
+//a stream holds the server cursor, so it should be closed (try-with-resources)
+Stream<Student> streamStudentsByPhonePrefix(String phonePrefix);
+Stream<Student> streamStudentsAllGoodMarks(int thresholdScore);
+Stream<Student> streamStudentsFewMarks(int thresholdMarks);
+Stream<Student> streamStudentsAllGoodMarksSubject(String subject, int thresholdScore);
+Stream<Student> streamStudentsMarksAmountBetween(int min, int max);
+
+//keyset pages sorted by id: pageToken is nextPageToken of the previous page (null for the first page)
+StudentsPage getStudentsAllGoodMarks(int thresholdScore, String pageToken, int pageSize);
+StudentsPage getStudentsFewMarks(int thresholdMarks, String pageToken, int pageSize);
+StudentsPage getStudentsAllGoodMarksSubject(String subject, int thresholdScore, String pageToken, int pageSize);
+StudentsPage getStudentsMarksAmountBetween(int min, int max, String pageToken, int pageSize);
+
 }
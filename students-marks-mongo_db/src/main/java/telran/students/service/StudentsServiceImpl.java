@@ -1,16 +1,33 @@
 package telran.students.service;
 
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDate;
 import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Comparator;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BiFunction;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import org.bson.Document;
 import org.hibernate.validator.internal.util.privilegedactions.NewInstance;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.BulkOperations.BulkMode;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
 import org.springframework.data.mongodb.core.MongoTemplate;
 import org.springframework.data.mongodb.core.aggregation.AccumulatorOperators;
 import org.springframework.data.mongodb.core.aggregation.AddFieldsOperation;
 import org.springframework.data.mongodb.core.aggregation.Aggregation;
 import org.springframework.data.mongodb.core.aggregation.AggregationExpression;
+import org.springframework.data.mongodb.core.aggregation.AggregationOptions;
 import org.springframework.data.mongodb.core.aggregation.AggregationOperationContext;
 import org.springframework.data.mongodb.core.aggregation.AggregationResults;
 import org.springframework.data.mongodb.core.aggregation.ArrayOperators.Filter;
@@ -22,94 +39,338 @@ import org.springframework.data.mongodb.core.aggregation.ProjectionOperation;
 import org.springframework.data.mongodb.core.aggregation.ScriptOperators.Accumulator;
 import org.springframework.data.mongodb.core.aggregation.UnwindOperation;
 import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.data.domain.Sort;
 import org.springframework.data.domain.Sort.Direction;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import com.mongodb.client.model.Filters;
+import com.mongodb.client.result.UpdateResult;
 import com.mongodb.internal.operation.AggregateOperation;
 
+import io.micrometer.core.annotation.Timed;
 import lombok.RequiredArgsConstructor;
-import lombok.experimental.var;
 import lombok.extern.slf4j.Slf4j;
 import telran.exceptions.NotFoundException;
+import telran.students.dto.AvgScoreReport;
+import telran.students.dto.BulkItemError;
+import telran.students.dto.BulkResult;
 import telran.students.dto.IdName;
-import telran.students.dto.IdNamePhone;
 import telran.students.dto.Mark;
 import telran.students.dto.MarksOnly;
 import telran.students.dto.NameAvgScore;
 import telran.students.dto.Student;
+import telran.students.dto.ScoreBin;
+import telran.students.dto.StatsPeriod;
+import telran.students.dto.StudentsPage;
+import telran.students.dto.SubjectPeriodStats;
+import telran.students.model.MarkFields;
+import telran.students.model.MarksBucketDoc;
 import telran.students.model.StudentDoc;
 import telran.students.repo.StudentRepo;
+import telran.students.service.MarksBuckets.ScoresFilter;
 @Service
 @Slf4j
 @RequiredArgsConstructor
+//timer of each method, tagged by method name and exception
+@Timed(value = "students.service", percentiles = { 0.5, 0.95, 0.99 })
 public class StudentsServiceImpl implements StudentsService {
 final StudentRepo studentRepo;
 final MongoTemplate mongoTemplate;
+final StudentsCache studentsCache;
+final MarksUpdates marksUpdates;
+final AvgScoresView avgScoresView;
+final MarksBuckets marksBuckets;
+final SubjectsDictionary subjectsDictionary;
+final Leaderboards leaderboards;
+final QueryResultsCache queryResultsCache;
+final ColumnarSnapshot columnarSnapshot;
+final OptimisticRetries optimisticRetries;
+final TransactionTemplate transactionTemplate;
+@Value("${app.students.bulk.batch-size:1000}")
+int bulkBatchSize;
+@Value("${app.students.phone-prefix.max-results:1000}")
+int phonePrefixMaxResults;
+@Value("${app.students.page.max-size:1000}")
+int maxPageSize;
+@Value("${app.students.stream.batch-size:1000}")
+int streamBatchSize;
 
 
 	@Override
-	@Transactional
 	public Student addStudent(Student student) {
+		//existence of the student is checked by the unique indexes of _id and phone
+		//one document is inserted without transaction
 		long id = student.id();
-		if(studentRepo.existsById(id)) {
-			throw new IllegalStateException(String.format("Student %d already exists", id));
+		long generation = leaderboards.getGeneration();
+		try {
+			mongoTemplate.insert(StudentDoc.of(student));
+		} catch (DuplicateKeyException e) {
+			throw DuplicateKeys.studentExists(e, student);
 		}
-		studentRepo.save(StudentDoc.of(student));
-		
+		studentsCache.invalidate(id);
+		columnarSnapshot.markDirty(id);
+		queryResultsCache.bumpEpoch();
+		leaderboards.addStudent(student, generation);
 		log.debug("saved {}", student);
 		return student;
 	}
 
 	@Override
-	@Transactional
 	public Student updatePhone(long id, String phone) {
-		StudentDoc studentDoc = getStudentDoc(id);
-		String oldPhone = studentDoc.getPhone();
-		studentDoc.setPhone(phone);
-		studentRepo.save(studentDoc);
-		log.debug("student {}, old phone number {}, new phone number {}", id, oldPhone, phone);
-		return studentDoc.build();
+		long generation = leaderboards.getGeneration();
+		Student student = optimisticRetries.execute(() -> updatePhoneVersioned(id, phone));
+		studentsCache.invalidate(id);
+		columnarSnapshot.markDirty(id);
+		queryResultsCache.bumpEpoch();
+		leaderboards.updateStudent(student, generation);
+		return student;
 	}
 
-	
-	private StudentDoc getStudentDoc(long id) {
-		return studentRepo.findById(id)
-				.orElseThrow(() -> new NotFoundException(String.format("Student %d not found", id)));
+	private Student updatePhoneVersioned(long id, String phone) {
+		//only the phone is written, on condition that the document has not been changed since it was read
+		StudentDoc studentDoc = studentRepo.findStudentNoMarks(id);
+		if (studentDoc == null) {
+			throw new NotFoundException(String.format("Student %d not found", id));
+		}
+		Query query = new Query(Criteria.where("id").is(id).and("version").is(studentDoc.getVersion()));
+		UpdateResult updateResult = null;
+		try {
+			updateResult = mongoTemplate.updateFirst(query, new Update().set("phone", phone).inc("version", 1),
+					StudentDoc.class);
+		} catch (DuplicateKeyException e) {
+			//only the unique index of phone is affected by the update
+			throw DuplicateKeys.phoneExists(phone);
+		}
+		if (updateResult.getMatchedCount() == 0) {
+			throw new OptimisticLockingFailureException(
+					String.format("Student %d version %d has been changed", id, studentDoc.getVersion()));
+		}
+		log.debug("student {}, old phone number {}, new phone number {}", id, studentDoc.getPhone(), phone);
+		return new Student(id, studentDoc.getName(), phone);
 	}
 
-	
 	@Override 
 	public Student getStudent(long id) {
-		return getStudentDoc(id).build();
+		Student student = studentsCache.get(id);
+		if (student == null) {
+			long generation = studentsCache.getGeneration();
+			StudentDoc studentDoc = studentRepo.findStudentNoMarks(id);
+			if (studentDoc == null) {
+				throw new NotFoundException(String.format("Student %d not found", id));
+			}
+			student = studentDoc.build();
+			studentsCache.put(student, generation);
+		}
+		return student;
 	}
 	
 	@Override
-	@Transactional
 	public List<Mark> addMark(long id, Mark mark) {
-		StudentDoc studentDoc = getStudentDoc(id);
-		studentDoc.addMark(mark);
-		studentRepo.save(studentDoc);
+		List<Mark> marks = null;
+		long generation = leaderboards.getGeneration();
+		if (marksBuckets.isEnabled()) {
+			appendMarkToBucket(id, mark);
+			marks = marksBuckets.getMarks(id);
+		} else {
+			//single round trip: mark and statistics are updated at DB server, only updated marks are returned
+			//one document is touched, so no transaction is required
+			Query query = new Query(Criteria.where("id").is(id));
+			query.fields().include("marks");
+			StudentDoc studentDoc = mongoTemplate.findAndModify(query, marksUpdates.addMarks(List.of(mark)),
+					FindAndModifyOptions.options().returnNew(true), StudentDoc.class);
+			if(studentDoc == null) {
+				throw new NotFoundException(String.format("Student %d not found", id));
+			}
+			marks = studentDoc.getMarks();
+		}
+		avgScoresView.markDirty(id);
+		columnarSnapshot.markDirty(id);
+		queryResultsCache.bumpEpoch();
+		leaderboards.addMarks(id, List.of(mark), generation);
 		log.debug("student {}, added mark {}", id, mark);
-		return studentDoc.getMarks();
+		return marks;
+	}
+
+	@Override
+	public void appendMark(long id, Mark mark) {
+		long generation = leaderboards.getGeneration();
+		if (marksBuckets.isEnabled()) {
+			appendMarkToBucket(id, mark);
+		} else {
+			UpdateResult updateResult = mongoTemplate.updateFirst(new Query(Criteria.where("id").is(id)),
+					marksUpdates.addMarks(List.of(mark)), StudentDoc.class);
+			if(updateResult.getMatchedCount() == 0) {
+				throw new NotFoundException(String.format("Student %d not found", id));
+			}
+		}
+		avgScoresView.markDirty(id);
+		columnarSnapshot.markDirty(id);
+		queryResultsCache.bumpEpoch();
+		leaderboards.addMarks(id, List.of(mark), generation);
+		log.debug("student {}, appended mark {}", id, mark);
+	}
+
+	private void appendMarkToBucket(long id, Mark mark) {
+		//the statistics and the bucket are two documents, so they are updated in one transaction
+		//retried on the conflicts with concurrent writes of the buckets;
+		//the statistics are updated first: a student not found is detected before a bucket is created
+		optimisticRetries.execute(() -> transactionTemplate.execute(status -> {
+			UpdateResult updateResult = mongoTemplate.updateFirst(new Query(Criteria.where("id").is(id)),
+					marksUpdates.addStats(List.of(mark)), StudentDoc.class);
+			if(updateResult.getMatchedCount() == 0) {
+				throw new NotFoundException(String.format("Student %d not found", id));
+			}
+			marksBuckets.addMarks(id, List.of(mark));
+			return null;
+		}));
+	}
+
+	@Override
+	public BulkResult addStudents(List<Student> students) {
+		//duplicated ids are rejected by the unique index of _id, no pre-check is needed
+		int nInserted = 0;
+		List<BulkItemError> errors = new ArrayList<>();
+		for (int from = 0; from < students.size(); from += bulkBatchSize) {
+			List<Student> batch = students.subList(from, Math.min(from + bulkBatchSize, students.size()));
+			BulkOperations bulkOperations = mongoTemplate.bulkOps(BulkMode.UNORDERED, StudentDoc.class);
+			bulkOperations.insert(batch.stream().map(StudentDoc::of).toList());
+			long generation = leaderboards.getGeneration();
+			batch.forEach(student -> studentsCache.invalidate(student.id()));
+			Set<Integer> failedIndexes = Set.of();
+			try {
+				nInserted += bulkOperations.execute().getInsertedCount();
+			} catch (BulkOperationException e) {
+				nInserted += e.getResult().getInsertedCount();
+				e.getErrors().forEach(error -> errors.add(DuplicateKeys.toBulkItemError(error,
+						batch.get(error.getIndex()))));
+				failedIndexes = e.getErrors().stream().map(error -> error.getIndex()).collect(Collectors.toSet());
+			}
+			batch.forEach(student -> columnarSnapshot.markDirty(student.id()));
+			queryResultsCache.bumpEpoch();
+			for (int i = 0; i < batch.size(); i++) {
+				if (!failedIndexes.contains(i)) {
+					leaderboards.addStudent(batch.get(i), generation);
+				}
+			}
+		}
+		log.debug("inserted {} students, errors {}", nInserted, errors);
+		return new BulkResult(nInserted, errors);
+	}
+
+	@Override
+	public BulkResult addMarks(Map<Long, List<Mark>> marks) {
+		int nUpdated = 0;
+		List<BulkItemError> errors = new ArrayList<>();
+		List<Long> ids = marks.entrySet().stream().filter(e -> !e.getValue().isEmpty())
+				.map(Map.Entry::getKey).toList();
+		for (int from = 0; from < ids.size(); from += bulkBatchSize) {
+			List<Long> batch = ids.subList(from, Math.min(from + bulkBatchSize, ids.size()));
+			int nErrors = errors.size();
+			long generation = leaderboards.getGeneration();
+			List<Long> updatedIds;
+			if (marksBuckets.isEnabled()) {
+				updatedIds = addMarksToBuckets(batch, marks);
+				Set<Long> updatedIdsSet = Set.copyOf(updatedIds);
+				batch.stream().filter(id -> !updatedIdsSet.contains(id))
+					.forEach(id -> errors.add(notFoundError(id)));
+			} else {
+				BulkOperations bulkOperations = mongoTemplate.bulkOps(BulkMode.UNORDERED, StudentDoc.class);
+				batch.forEach(id -> bulkOperations.updateOne(new Query(Criteria.where("id").is(id)),
+						marksUpdates.addMarks(marks.get(id))));
+				int nMatched = 0;
+				try {
+					nMatched = bulkOperations.execute().getMatchedCount();
+				} catch (BulkOperationException e) {
+					nMatched = e.getResult().getMatchedCount();
+					e.getErrors().forEach(error -> errors.add(new BulkItemError(batch.get(error.getIndex()),
+							BulkItemError.Reason.OTHER, error.getMessage())));
+				}
+				if (nMatched + errors.size() - nErrors < batch.size()) {
+					addNotFoundErrors(batch, errors);
+				}
+				Set<Long> failedIds = errors.subList(nErrors, errors.size()).stream().map(BulkItemError::id)
+						.collect(Collectors.toSet());
+				updatedIds = batch.stream().filter(id -> !failedIds.contains(id)).toList();
+			}
+			nUpdated += updatedIds.size();
+			batch.forEach(avgScoresView::markDirty);
+			batch.forEach(columnarSnapshot::markDirty);
+			queryResultsCache.bumpEpoch();
+			updatedIds.forEach(id -> leaderboards.addMarks(id, marks.get(id), generation));
+		}
+		log.debug("added marks to {} students, errors {}", nUpdated, errors);
+		return new BulkResult(nUpdated, errors);
+	}
+
+	private List<Long> addMarksToBuckets(List<Long> batch, Map<Long, List<Mark>> marks) {
+		//the statistics and the buckets of a batch are updated in one transaction as for one appended mark;
+		//a write error aborts the transaction, so the students not found are excluded before the writes
+		return optimisticRetries.execute(() -> transactionTemplate.execute(status -> {
+			Query query = new Query(Criteria.where("id").in(batch));
+			query.fields().include("id");
+			List<Long> existingIds = mongoTemplate.find(query, StudentDoc.class).stream()
+					.map(StudentDoc::getId).toList();
+			if (!existingIds.isEmpty()) {
+				BulkOperations bulkOperations = mongoTemplate.bulkOps(BulkMode.UNORDERED, StudentDoc.class);
+				existingIds.forEach(id -> bulkOperations.updateOne(new Query(Criteria.where("id").is(id)),
+						marksUpdates.addStats(marks.get(id))));
+				bulkOperations.execute();
+				marksBuckets.addMarks(existingIds.stream().collect(Collectors.toMap(id -> id, marks::get)));
+			}
+			return existingIds;
+		}));
+	}
+
+	private void addNotFoundErrors(List<Long> batch, List<BulkItemError> errors) {
+		//the bulk result has only the total of matched documents, so the missing ids are found by one query
+		Query query = new Query(Criteria.where("id").in(batch));
+		query.fields().include("id");
+		Set<Long> existingIds = mongoTemplate.find(query, StudentDoc.class).stream()
+				.map(StudentDoc::getId).collect(Collectors.toSet());
+		Set<Long> failedIds = errors.stream().map(BulkItemError::id).collect(Collectors.toSet());
+		batch.stream().filter(id -> !existingIds.contains(id) && !failedIds.contains(id))
+			.forEach(id -> errors.add(notFoundError(id)));
+	}
+
+	private static BulkItemError notFoundError(long id) {
+		return new BulkItemError(id, BulkItemError.Reason.NOT_FOUND, String.format("Student %d not found", id));
 	}
 
 	@Override
-	@Transactional
 	public Student removeStudent(long id) {
-		StudentDoc studentDoc = studentRepo.findStudentNoMarks(id);
+		//the transaction is required only for the student with the buckets of marks
+		StudentDoc studentDoc = marksBuckets.isEnabled() ?
+				transactionTemplate.execute(status -> removeStudentDoc(id)) : removeStudentDoc(id);
+		studentsCache.invalidate(id);
+		avgScoresView.remove(id);
+		columnarSnapshot.markDirty(id);
+		queryResultsCache.bumpEpoch();
+		leaderboards.removeStudent(id);
+		log.debug("removed student {}", id);
+		return studentDoc.build();
+	}
+
+	private StudentDoc removeStudentDoc(long id) {
+		Query query = new Query(Criteria.where("id").is(id));
+		query.fields().include("id", "name", "phone");
+		StudentDoc studentDoc = mongoTemplate.findAndRemove(query, StudentDoc.class);
 		if(studentDoc == null) {
 			throw new NotFoundException(String.format("student %d not found",id));
 		}
-		studentRepo.deleteById(id);
-		log.debug("removed student {}, marks {} ", id, studentDoc.getMarks());
-		return studentDoc.build();
+		if (marksBuckets.isEnabled()) {
+			marksBuckets.remove(id);
+		}
+		return studentDoc;
 	}
 
 	@Override
-	@Transactional(readOnly = true)
 	public List<Mark> getMarks(long id) {
+		if (marksBuckets.isEnabled()) {
+			return checkStudentMarks(id, marksBuckets.getMarks(id));
+		}
 		StudentDoc studentDoc = studentRepo.findStudentMarks(id);
 		if(studentDoc == null) {
 			throw new NotFoundException(String.format("student %d not found",id));
@@ -121,244 +382,332 @@ final MongoTemplate mongoTemplate;
 	
 	@Override
 	public Student getStudentByPhone(String phoneNumber) {
-		IdName studentDoc = studentRepo.findByPhone(phoneNumber);
-		Student res = null;
-		if (studentDoc != null) {
-			res = new Student(studentDoc.getId(), studentDoc.getName(), phoneNumber);
+		Student res = studentsCache.getByPhone(phoneNumber);
+		if (res == null) {
+			long generation = studentsCache.getGeneration();
+			IdName studentDoc = studentRepo.findByPhone(phoneNumber);
+			if (studentDoc != null) {
+				res = new Student(studentDoc.getId(), studentDoc.getName(), phoneNumber);
+				studentsCache.put(res, generation);
+			}
 		}
 		return res;
 	}
 
 	@Override
 	public List<Student> getStudentsByPhonePrefix(String phonePrefix) {
-		List <IdNamePhone> students = studentRepo.findByPhoneRegex(phonePrefix + ".+");
-		log.debug("number of the students having phone prefix {} is {}", phonePrefix, students.size());
-		return getStudents(students);
+		return getStudentsByPhonePrefix(phonePrefix, null, phonePrefixMaxResults);
+	}
+
+	@Override
+	public List<Student> getStudentsByPhonePrefix(String phonePrefix, String afterPhone, int limit) {
+		//limit 0 of MongoDB means no limit
+		if (limit <= 0) {
+			throw new IllegalArgumentException("limit should be positive");
+		}
+		int nStudents = Math.min(limit, phonePrefixMaxResults);
+		Query query = new Query(StudentsQueries.phonePrefix(phonePrefix, afterPhone))
+				.with(Sort.by("phone")).limit(nStudents);
+		List<Student> students = findStudentsNoMarks(query);
+		if (students.size() == phonePrefixMaxResults) {
+			log.warn("number of the students having phone prefix {} reached the limit {}", phonePrefix,
+					phonePrefixMaxResults);
+		}
+		log.debug("number of the students having phone prefix {} after {} is {}", phonePrefix, afterPhone,
+				students.size());
+		return students;
 	}
 
-	private List<Student> getStudents(List<IdNamePhone> students) {
-		return students.stream().map(inp -> new Student(inp.getId(), inp.getName(),
-				inp.getPhone())).toList();
+	@Override
+	public Stream<Student> streamStudentsByPhonePrefix(String phonePrefix) {
+		return streamStudents(new Query(StudentsQueries.phonePrefix(phonePrefix, null)).with(Sort.by("phone")));
 	}
 
 	@Override
 	public List<Student> getStudentsAllGoodMarks(int thresholdScore) {
-		List<IdNamePhone> students = studentRepo.findByGoodMarks(thresholdScore);
-		return getStudents(students);
+		return marksBuckets.isEnabled() ? findStudents(marksBuckets.allScoresGreater(thresholdScore))
+				: findStudents(StudentsQueries.allGoodMarks(thresholdScore));
+	}
+
+	@Override
+	public Stream<Student> streamStudentsAllGoodMarks(int thresholdScore) {
+		return marksBuckets.isEnabled() ? streamStudents(marksBuckets.allScoresGreater(thresholdScore))
+				: streamStudents(StudentsQueries.allGoodMarks(thresholdScore));
+	}
+
+	@Override
+	public StudentsPage getStudentsAllGoodMarks(int thresholdScore, String pageToken, int pageSize) {
+		return marksBuckets.isEnabled()
+				? findStudentsPage(marksBuckets.allScoresGreater(thresholdScore), pageToken, pageSize)
+				: findStudentsPage(StudentsQueries.allGoodMarks(thresholdScore), pageToken, pageSize);
 	}
 
 	@Override
 	public List<Student> getStudentsFewMarks(int thresholdMarks) {
-		List<IdNamePhone> students = studentRepo.findByFewMarks(thresholdMarks);
-		return getStudents(students);
+		return findStudents(StudentsQueries.fewMarks(thresholdMarks));
+	}
+
+	@Override
+	public Stream<Student> streamStudentsFewMarks(int thresholdMarks) {
+		return streamStudents(StudentsQueries.fewMarks(thresholdMarks));
+	}
+
+	@Override
+	public StudentsPage getStudentsFewMarks(int thresholdMarks, String pageToken, int pageSize) {
+		return findStudentsPage(StudentsQueries.fewMarks(thresholdMarks), pageToken, pageSize);
 	}
 
 	@Override
 	public List<Student> getStudentsAllGoodMarksSubject(String subject, int thresholdScore) {
-		// TODO 
 		//getting students who have at least one score of a given subject and all scores of that subject
 		//greater than or equal a given threshold
-		List<StudentDoc> studentsDoc = studentRepo.getStudentsAllGoodMarksSubject(subject, thresholdScore);
-		return studentsDoc.stream().map(s ->  s.build()).toList();
+		return queryResultsCache.get("getStudentsAllGoodMarksSubject", List.of(subject, thresholdScore),
+				() -> {
+					int subjectId = subjectsDictionary.findId(subject);
+					return marksBuckets.isEnabled()
+							? findStudents(marksBuckets.allSubjectScoresGreaterEqual(subjectId, thresholdScore))
+							: findStudents(StudentsQueries.allGoodMarksSubject(subjectId, thresholdScore));
+				});
+	}
+
+	@Override
+	public Stream<Student> streamStudentsAllGoodMarksSubject(String subject, int thresholdScore) {
+		int subjectId = subjectsDictionary.findId(subject);
+		return marksBuckets.isEnabled()
+				? streamStudents(marksBuckets.allSubjectScoresGreaterEqual(subjectId, thresholdScore))
+				: streamStudents(StudentsQueries.allGoodMarksSubject(subjectId, thresholdScore));
 	}
 
 	@Override
+	public StudentsPage getStudentsAllGoodMarksSubject(String subject, int thresholdScore, String pageToken,
+			int pageSize) {
+		int subjectId = subjectsDictionary.findId(subject);
+		return marksBuckets.isEnabled()
+				? findStudentsPage(marksBuckets.allSubjectScoresGreaterEqual(subjectId, thresholdScore), pageToken,
+						pageSize)
+				: findStudentsPage(StudentsQueries.allGoodMarksSubject(subjectId, thresholdScore), pageToken, pageSize);
+	}
+
+	@Override
+	@AnalyticsRead
 	public List<Student> getStudentsMarksAmountBetween(int min, int max) {
-		// TODO 
 		//getting students having number of marks in a closed range of the given values
 		//nMarks >= min && nMarks <= max
-		List<StudentDoc> studentsDoc = studentRepo.getStudentsMarksAmountBetween(min, max);
-		return studentsDoc.stream().map(s -> s.build()).toList();
+		return findStudents(StudentsQueries.marksAmountBetween(min, max));
+	}
+
+	@Override
+	public Stream<Student> streamStudentsMarksAmountBetween(int min, int max) {
+		return streamStudents(StudentsQueries.marksAmountBetween(min, max));
+	}
+
+	@Override
+	@AnalyticsRead
+	public StudentsPage getStudentsMarksAmountBetween(int min, int max, String pageToken, int pageSize) {
+		return findStudentsPage(StudentsQueries.marksAmountBetween(min, max), pageToken, pageSize);
+	}
+
+	private List<Student> findStudents(Criteria criteria) {
+		return findStudentsNoMarks(new Query(criteria).with(Sort.by("id")));
+	}
+
+	private List<Student> findStudents(ScoresFilter filter) {
+		//with buckets the marks of a student are in several documents, so the students are found by aggregation
+		return marksBuckets.findStudents(filter, null, 0);
+	}
+
+	private Stream<Student> streamStudents(Criteria criteria) {
+		return streamStudents(new Query(criteria).with(Sort.by("id")));
+	}
+
+	private Stream<Student> streamStudents(Query query) {
+		//documents are read from the server cursor batch by batch, only the current batch is in memory
+		query.fields().include("id", "name", "phone");
+		query.cursorBatchSize(streamBatchSize);
+		return mongoTemplate.stream(query, StudentDoc.class).map(StudentDoc::build);
+	}
+
+	private Stream<Student> streamStudents(ScoresFilter filter) {
+		return marksBuckets.streamStudents(filter, streamBatchSize);
+	}
+
+	private StudentsPage findStudentsPage(Criteria criteria, String pageToken, int pageSize) {
+		return findStudentsPage((afterId, limit) -> findStudentsNoMarks(new Query(afterId == null ? criteria
+				: new Criteria().andOperator(criteria, Criteria.where("id").gt(afterId)))
+				.with(Sort.by("id")).limit(limit)), pageToken, pageSize);
+	}
+
+	private StudentsPage findStudentsPage(ScoresFilter filter, String pageToken, int pageSize) {
+		return findStudentsPage((afterId, limit) -> marksBuckets.findStudents(filter, afterId, limit), pageToken,
+				pageSize);
+	}
+
+	private StudentsPage findStudentsPage(BiFunction<Long, Integer, List<Student>> pageReader, String pageToken,
+			int pageSize) {
+		//keyset pagination: the page token is the last id of the previous page
+		if (pageSize <= 0) {
+			throw new IllegalArgumentException("page size should be positive");
+		}
+		int nStudents = Math.min(pageSize, maxPageSize);
+		Long afterId = pageToken == null ? null : fromPageToken(pageToken);
+		//one more student is read to know whether there is the next page
+		List<Student> students = pageReader.apply(afterId, nStudents + 1);
+		String nextPageToken = null;
+		if (students.size() > nStudents) {
+			students = students.subList(0, nStudents);
+			nextPageToken = toPageToken(students.get(nStudents - 1).id());
+		}
+		return new StudentsPage(students, nextPageToken);
+	}
+
+	private static String toPageToken(long id) {
+		return Base64.getUrlEncoder().withoutPadding()
+				.encodeToString(Long.toString(id).getBytes(StandardCharsets.US_ASCII));
+	}
+
+	private static long fromPageToken(String pageToken) {
+		try {
+			return Long.parseLong(new String(Base64.getUrlDecoder().decode(pageToken), StandardCharsets.US_ASCII));
+		} catch (IllegalArgumentException e) {
+			throw new IllegalArgumentException(String.format("Wrong page token %s", pageToken));
+		}
 	}
 	
 	@Override
 	public List<Mark> getStudentSubjectMarks(long id, String subject) {
-		if (!studentRepo.existsById(id)) {
-			throw new NotFoundException(String.format("student with id %d not found", id));
-		}
-		MatchOperation matchStudent = Aggregation.match(Criteria.where("id").is(id));
-		UnwindOperation unwindOperation = Aggregation.unwind("marks");
-		MatchOperation matchMarksSubject = Aggregation.match(Criteria.where("marks.subject").is(subject));
-		ProjectionOperation projectionOperation = Aggregation.project("marks.score", "marks.date");
-		Aggregation pipeLine = Aggregation.newAggregation(matchStudent, unwindOperation,
-				matchMarksSubject, projectionOperation);
-		var aggregationResult = mongoTemplate.aggregate(pipeLine, StudentDoc.class, Document.class);
-		List<Document> listDocuments = aggregationResult.getMappedResults();
-		log.debug("listDocuments: {}", listDocuments);
-		List<Mark> result = listDocuments.stream()
-				.map(d -> new Mark(subject, d.getDate("date").toInstant()
-						.atZone(ZoneId.systemDefault()).toLocalDate(), d.getInteger("score"))).toList();
-				;
+		List<Mark> result = findStudentMarks(id,
+				StudentsQueries.subjectMarks(subjectsDictionary.findId(subject)));
 		log.debug("result: {}", result);
-		return result;		
+		return result;
 	}
 
 	@Override
+	@AnalyticsRead
 	public List<NameAvgScore> getStudentAvgScoreGreater(int avgScoreThreshold) {
-		UnwindOperation unwindOperation = Aggregation.unwind("marks");
-		GroupOperation groupOperation = Aggregation.group("name").avg("marks.score").as("avgMark");
-		MatchOperation matchOperation = Aggregation.match(Criteria.where("avgMark").gt(avgScoreThreshold));
-		SortOperation sortOperation = Aggregation.sort(Direction.DESC, "avgMark");
-		Aggregation pipeLine = Aggregation.newAggregation(unwindOperation, groupOperation, matchOperation, sortOperation);
-		List<NameAvgScore> res = mongoTemplate.aggregate(pipeLine, StudentDoc.class, Document.class)
-				.getMappedResults().stream().map(d -> new NameAvgScore(d.getString("_id"),
-						d.getDouble("avgMark").intValue())).toList();
+		List<NameAvgScore> res = getAvgScoreReport(avgScoreThreshold).students();
+		log.debug("result: {}", res);
+		return res;
+	}
+
+	@Override
+	@AnalyticsRead
+	public AvgScoreReport getStudentAvgScoreReport(int avgScoreThreshold) {
+		AvgScoreReport res = getAvgScoreReport(avgScoreThreshold);
 		log.debug("result: {}", res);
 		return res;
 	}
+
+	private AvgScoreReport getAvgScoreReport(int avgScoreThreshold) {
+		//the cached report is invalidated by the writes and by the refreshes of the view
+		return queryResultsCache.get("getStudentAvgScoreReport", List.of(avgScoreThreshold),
+				() -> avgScoresView.getAvgScoreGreater(avgScoreThreshold));
+	}
 	
 	
 	@Override
 	public List<Mark> getStudentMarksAtDates(long id, LocalDate from, LocalDate to) {
-		// TODO 
 		//returns list of Mark objects of the required student at the given dates
 		//Filtering and projection should be done at DB server
-		if (!studentRepo.existsById(id)) {
-			throw new NotFoundException(String.format("student with id %d not found", id));
+		List<Mark> marks = new ArrayList<>(findStudentMarks(id, StudentsQueries.marksAtDates(from, to)));
+		//marks of one student are sorted in memory instead of unwinding them at the server
+		marks.sort(Comparator.comparing(Mark::date).reversed());
+		log.debug("marks: {}", marks);
+		return marks;
+	}
+
+	private List<Mark> findStudentMarks(long id, AggregationExpression marksCondition) {
+		if (marksBuckets.isEnabled()) {
+			return checkStudentMarks(id, marksBuckets.getMarks(id, marksCondition));
 		}
-		MatchOperation matchStudentById = Aggregation.match(Criteria.where("id").is(id));
-		UnwindOperation unwindStudentMarks = Aggregation.unwind("marks");
-		ProjectionOperation projectionOperation = Aggregation.project("marks.subject", "marks.score", "marks.date");
-		MatchOperation matchMarksByDateFrom = Aggregation.match(Criteria.where("date").gte(from));
-		MatchOperation matchMarksByDateTo = Aggregation.match(Criteria.where("date").lte(to));
-		SortOperation sortByMarkDate = Aggregation.sort(Direction.DESC, "date");
-		
-		Aggregation pipeLine = Aggregation.newAggregation(
-				matchStudentById,
-				unwindStudentMarks,
-				projectionOperation,
-				matchMarksByDateFrom,
-				matchMarksByDateTo,
-				sortByMarkDate
-			); 
-		
-		mongoTemplate.aggregate(pipeLine, StudentDoc.class, Document.class)
-		.getMappedResults().stream().forEach(e -> {
-			System.out.println(e.toJson());
-			
-		});
-		System.out.println("Marks from repository method: " + getMarks(id).toString());
-		
-		List<Mark> marks = mongoTemplate.aggregate(pipeLine, StudentDoc.class, Document.class)
-				.getMappedResults()
-				.stream() 
-				.map(m -> {
-					
-					//get to object inside another object ("marks.subject" does not work)
-						/*
-						Document marksDocument = (Document) m.get("marks");
-						return new Mark(marksDocument.getString("subject"),
-						marksDocument.getDate("date").toInstant().atZone(ZoneId.systemDefault()).toLocalDate(),
-						marksDocument.getInteger("score"));	
-						*/
-					
-					return new Mark(
-							m.getString("subject"),
-							m.getDate("date").toInstant().atZone(ZoneId.systemDefault()).toLocalDate(),
-							m.getInteger("score")
-						);
-					
-				})
-				.toList();
-			log.debug("listDocuments: {}", marks);	
-			return marks;
-	
+		StudentDoc studentDoc = mongoTemplate.aggregate(StudentsQueries.studentMarks(id, marksCondition),
+				StudentDoc.class, StudentDoc.class).getUniqueMappedResult();
+		if (studentDoc == null) {
+			throw new NotFoundException(String.format("student %d not found", id));
+		}
+		List<Mark> marks = studentDoc.getMarks();
+		return marks == null ? List.of() : marks;
+	}
+
+	private List<Mark> checkStudentMarks(long id, List<Mark> marks) {
+		//no buckets may mean either no marks or no student, the student is checked only in that case
+		if (marks.isEmpty() && !studentRepo.existsById(id)) {
+			throw new NotFoundException(String.format("student %d not found", id));
+		}
+		return marks;
 	}
 
 	@Override
+	@AnalyticsRead
 	public List<Student> getBestStudents(int nStudents) {
-		// TODO 
 		//returns list of a given number of the best students
 		//Best students are the ones who have most scores greater than 80
-		
-		
-		//match field of array element:  match(Criteria.where("marks").elemMatch(Criteria.where("score").gt(80))
-		//match field of object: .match(Criteria.where("marks.score").gt(80));
-		MatchOperation matchByPresentScore80 = Aggregation.match(Criteria.where("marks").elemMatch(Criteria.where("score").gt(80)));
-		UnwindOperation unwindMarks = Aggregation.unwind("marks");
-		MatchOperation matchByScore80Only = Aggregation.match(Criteria.where("marks.score").gt(80));
-		
-		//the group creates a projection based on the passed fields. 
-		//If there is more than one field, an internal object will be created under new id field
-		GroupOperation groupByStudentId = Aggregation.group("id", "name", "phone").count().as("marksCount");
-		SortOperation sortByMarksCount = Aggregation.sort( Direction.DESC,"marksCount", "name");
-		LimitOperation limit = Aggregation.limit(nStudents);
-		
-		AggregationResults<Document> aggregationResults = mongoTemplate
-			.aggregate(
-					Aggregation.newAggregation(
-							matchByPresentScore80,
-							unwindMarks,
-							matchByScore80Only,
-							groupByStudentId,
-							sortByMarksCount,
-							limit
-							),
-					StudentDoc.class,
-					Document.class
-					);
-		System.out.println("--------------------------");
-		aggregationResults.getMappedResults().stream().forEach(r -> System.out.println(r.toJson()));
-		
-			List<Student> students = aggregationResults.getMappedResults()
-			.stream()
-			.map(s -> {
-				Document student = (Document) s.get("_id");
-				return new Student(
-					student.getLong("id"),
-					student.getString("name"),
-					student.getString("phone")
-					);	
-				}
-			)
-			.toList();
-			
+		//the leaderboards are read without database access, the query is used until they are loaded
+		//the query results are cached, the leaderboards need no cache
+		List<Student> students = leaderboards.isReady() ? leaderboards.getBest(nStudents)
+				: queryResultsCache.get("getBestStudents", List.of(nStudents),
+						() -> findStudentsNoMarks(StudentsQueries.bestStudents(nStudents)));
 		log.debug("students: {}", students);	
 		return students;
 	}
 
 	@Override
+	@AnalyticsRead
 	public List<Student> getWorstStudents(int nStudents) {
-		// TODO 
 		//returns list of a given number of the worst students
 		//Worst students are the ones who have least sum's of all scores
-		//Students who have no scores at all should be considered as worst
-		//instead of GroupOperation to apply AggregationExpression (with AccumulatorOperators.Sum) and ProjectionOperation for adding new fields with computed values 
-		
-		UnwindOperation unwindByMarks = Aggregation.unwind("marks", true);
-		GroupOperation groupByScoresSum = Aggregation.group("id", "name", "phone").sum("marks.score").as("sum");
-		SortOperation sortByScoresSumAsc = Aggregation.sort(Direction.ASC, "sum");
-		LimitOperation limitOperation = Aggregation.limit(nStudents);
-		ProjectionOperation projectionOperation = Aggregation.project("_id");
-		
-		Aggregation aggregation = Aggregation.newAggregation(
-				unwindByMarks,
-				groupByScoresSum,
-				sortByScoresSumAsc,
-				limitOperation,
-				projectionOperation
-				);
-		
-		AggregationResults<Document> aggregationResults = mongoTemplate.aggregate(aggregation, StudentDoc.class, Document.class); 
-		aggregationResults.getMappedResults().stream().forEach(r -> System.out.println(r.toJson()));
-		
-		List<Student> students = aggregationResults
-				.getMappedResults()
-				.stream()
-				.map(s -> {
-					Document student = (Document) s.get("_id");
-					return new Student(
-						student.getLong("id"),
-						student.getString("name"),
-						student.getString("phone")
-						);	
-					}
-				)
-				.toList();
-		
+		//Students who have no scores at all should be considered as worst (sum of scores is 0)
+		List<Student> students = leaderboards.isReady() ? leaderboards.getWorst(nStudents)
+				: queryResultsCache.get("getWorstStudents", List.of(nStudents),
+						() -> findStudentsNoMarks(StudentsQueries.worstStudents(nStudents)));
+		log.debug("students: {}", students);	
 		return students;
 	}
 
+	@Override
+	@AnalyticsRead
+	public List<SubjectPeriodStats> getMarksStats(LocalDate from, LocalDate to, StatsPeriod period, int binWidth) {
+		if (binWidth <= 0) {
+			throw new IllegalArgumentException("bin width should be positive");
+		}
+		if (from.isAfter(to)) {
+			throw new IllegalArgumentException(String.format("date from %s is after date to %s", from, to));
+		}
+		List<SubjectPeriodStats> res = queryResultsCache.get("getMarksStats", List.of(from, to, period, binWidth),
+				() -> findMarksStats(from, to, period, binWidth));
+		log.debug("marks statistics from {} to {} by {}: {} groups", from, to, period, res.size());
+		return res;
+	}
 
+	private List<SubjectPeriodStats> findMarksStats(LocalDate from, LocalDate to, StatsPeriod period, int binWidth) {
+		String collectionName = marksBuckets.isEnabled() ? MarksBucketDoc.COLLECTION
+				: mongoTemplate.getCollectionName(StudentDoc.class);
+		//the marks are processed at the server, allowDiskUse for the groups of millions of marks
+		Aggregation aggregation = StudentsQueries.marksStats(from, to, period, binWidth)
+				.withOptions(AggregationOptions.builder().allowDiskUse(true).build());
+		return mongoTemplate.aggregate(aggregation, collectionName, Document.class).getMappedResults().stream()
+				.map(document -> toSubjectPeriodStats(document, binWidth))
+				.sorted(Comparator.comparing(SubjectPeriodStats::subject)
+						.thenComparing(SubjectPeriodStats::periodStart))
+				.toList();
+	}
+
+	private SubjectPeriodStats toSubjectPeriodStats(Document document, int binWidth) {
+		Document id = document.get("_id", Document.class);
+		long count = document.get("count", Number.class).longValue();
+		List<ScoreBin> histogram = document.getList("bins", Document.class).stream()
+				.map(bin -> new ScoreBin(bin.get("b", Number.class).intValue(),
+						bin.get("b", Number.class).intValue() + binWidth, bin.get("c", Number.class).longValue()))
+				.sorted(Comparator.comparingInt(ScoreBin::fromScore))
+				.toList();
+		return new SubjectPeriodStats(subjectsDictionary.getName(id.get(MarkFields.SUBJECT, Number.class).intValue()),
+				LocalDate.ofEpochDay(id.get("p", Number.class).longValue()), count,
+				document.get("sum", Number.class).doubleValue() / count,
+				document.get("min", Number.class).intValue(), document.get("max", Number.class).intValue(), histogram);
+	}
+
+	private List<Student> findStudentsNoMarks(Query query) {
+		query.fields().include("id", "name", "phone");
+		return mongoTemplate.find(query, StudentDoc.class).stream().map(StudentDoc::build).toList();
+	}
 
 }
@@ -0,0 +1,144 @@
+package telran.students.service;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.MongoDatabaseFactory;
+import org.springframework.stereotype.Component;
+
+import com.mongodb.ErrorCategory;
+import com.mongodb.MongoWriteException;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.IndexOptions;
+import com.mongodb.client.model.Indexes;
+import com.mongodb.client.model.Sorts;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+//dictionary of subjects: {_id: subject id, name: subject}, marks store the subject id (see MarkConverters)
+//the dictionary is used by the conversions of MongoTemplate, so the collection is accessed by the driver
+//(MongoDatabaseFactory) instead of MongoTemplate
+@Component
+@Slf4j
+@RequiredArgsConstructor
+public class SubjectsDictionary {
+	public static final String COLLECTION = "subjects";
+	//id of the subjects that are not in the dictionary, no mark has such id
+	public static final int NO_ID = -1;
+	static final int MAX_MISSING_SUBJECTS = 10_000;
+	final MongoDatabaseFactory databaseFactory;
+	@Value("${app.students.subjects.missing-ttl-ms:60000}")
+	long missingTtlMillis;
+	private final Map<String, Integer> ids = new ConcurrentHashMap<>();
+	private final Map<Integer, String> names = new ConcurrentHashMap<>();
+	//subjects not found in the collection with the time of the lookup; a subject added by this instance
+	//is removed at once, a subject added by another instance is found after the time to live
+	private final Map<String, Long> missingSubjects = new ConcurrentHashMap<>();
+	private volatile boolean loaded;
+
+	//id of the subject, the subject is added to the dictionary if it doesn't exist
+	public int getId(String subject) {
+		int id = findId(subject);
+		return id == NO_ID ? add(subject) : id;
+	}
+
+	//id of the subject or NO_ID, used by the queries
+	public int findId(String subject) {
+		load();
+		Integer id = ids.get(subject);
+		if (id == null && !isMissing(subject)) {
+			//the subject may be added by another instance of the application
+			Document document = getCollection().find(Filters.eq("name", subject)).first();
+			if (document == null) {
+				putMissing(subject);
+			} else {
+				id = put(document);
+			}
+		}
+		return id == null ? NO_ID : id;
+	}
+
+	public String getName(int id) {
+		load();
+		String name = names.get(id);
+		if (name == null) {
+			Document document = getCollection().find(Filters.eq("_id", id)).first();
+			if (document == null) {
+				throw new IllegalStateException(String.format("subject %d is not in the dictionary", id));
+			}
+			put(document);
+			name = document.getString("name");
+		}
+		return name;
+	}
+
+	public int size() {
+		load();
+		return ids.size();
+	}
+
+	private synchronized int add(String subject) {
+		Integer res = ids.get(subject);
+		while (res == null) {
+			Document last = getCollection().find().sort(Sorts.descending("_id")).first();
+			int id = last == null ? 0 : last.getInteger("_id") + 1;
+			try {
+				getCollection().insertOne(new Document("_id", id).append("name", subject));
+				res = put(new Document("_id", id).append("name", subject));
+				log.debug("subject {} is added with id {}", subject, id);
+			} catch (MongoWriteException e) {
+				if (e.getError().getCategory() != ErrorCategory.DUPLICATE_KEY) {
+					throw e;
+				}
+				//either the subject or the id is added concurrently by another instance
+				Document document = getCollection().find(Filters.eq("name", subject)).first();
+				res = document == null ? null : put(document);
+			}
+		}
+		return res;
+	}
+
+	private Integer put(Document document) {
+		Integer id = document.getInteger("_id");
+		String name = document.getString("name");
+		ids.put(name, id);
+		names.put(id, name);
+		missingSubjects.remove(name);
+		return id;
+	}
+
+	private boolean isMissing(String subject) {
+		Long lookupTime = missingSubjects.get(subject);
+		return lookupTime != null && System.currentTimeMillis() - lookupTime < missingTtlMillis;
+	}
+
+	private void putMissing(String subject) {
+		//the lookups of arbitrary subjects don't grow the memory without a limit
+		if (missingSubjects.size() >= MAX_MISSING_SUBJECTS) {
+			missingSubjects.clear();
+		}
+		missingSubjects.put(subject, System.currentTimeMillis());
+	}
+
+	private void load() {
+		if (!loaded) {
+			synchronized (this) {
+				if (!loaded) {
+					MongoCollection<Document> collection = getCollection();
+					collection.createIndex(Indexes.ascending("name"), new IndexOptions().unique(true).name("name_unique"));
+					collection.find().forEach(this::put);
+					loaded = true;
+					log.debug("subjects dictionary is loaded, {} subjects", ids.size());
+				}
+			}
+		}
+	}
+
+	private MongoCollection<Document> getCollection() {
+		return databaseFactory.getMongoDatabase().getCollection(COLLECTION);
+	}
+}
@@ -0,0 +1,136 @@
+package telran.students;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BooleanSupplier;
+
+import org.bson.Document;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.data.mongodb.MongoTransactionManager;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+import telran.students.dto.Mark;
+import telran.students.dto.Student;
+import telran.students.model.StudentDoc;
+import telran.students.service.ChangeStreamProjector;
+import telran.students.service.Leaderboards;
+import telran.students.service.MarksUpdates;
+import telran.students.service.ProjectionHandler;
+import telran.students.service.StudentChange;
+import telran.students.service.StudentsService;
+
+//the writes bypassing the service are projected to the cache and the leaderboards by the change stream
+@SpringBootTest(properties = "app.students.change-stream.enabled=true")
+class ChangeStreamProjectorTests {
+	private static final long TIMEOUT_MILLIS = 10_000;
+	@Autowired
+	StudentsService studentsService;
+	@Autowired
+	DbTestCreation dbCreation;
+	@Autowired
+	MongoTemplate mongoTemplate;
+	@Autowired
+	MarksUpdates marksUpdates;
+	@Autowired
+	Leaderboards leaderboards;
+	@Autowired
+	FailingOnceHandler failingOnceHandler;
+	@MockBean
+	MongoTransactionManager mongoTransactionManager;
+
+	@BeforeEach
+	void setUp() {
+		dbCreation.createDB();
+	}
+
+	@Test
+	void directWritesTest() {
+		//student 7 has no marks, 5 good marks make him the best student
+		Mark mark = new Mark(DbTestCreation.SUBJECT_1, LocalDate.parse("2024-02-01"), 95);
+		mongoTemplate.updateFirst(idQuery(DbTestCreation.ID_7), marksUpdates.addMarks(List.of(mark, mark, mark, mark, mark)),
+				StudentDoc.class);
+		await(() -> studentsService.getBestStudents(1).equals(List.of(dbCreation.getStudent(7))));
+		assertTrue(leaderboards.check(10));
+
+		//the cached student is invalidated
+		assertEquals(DbTestCreation.PONE_1, studentsService.getStudent(DbTestCreation.ID_1).phone());
+		mongoTemplate.updateFirst(idQuery(DbTestCreation.ID_1), new Update().set("phone", "051-7654321"), StudentDoc.class);
+		await(() -> studentsService.getStudent(DbTestCreation.ID_1).phone().equals("051-7654321"));
+
+		mongoTemplate.remove(idQuery(DbTestCreation.ID_7), StudentDoc.class);
+		await(() -> !studentsService.getBestStudents(1).equals(List.of(dbCreation.getStudent(7))));
+		assertIterableEquals(List.of(dbCreation.getStudent(6)), studentsService.getBestStudents(1));
+
+		mongoTemplate.insert(StudentDoc.of(new Student(100L, "name100", "050-0000100")));
+		await(() -> studentsService.getWorstStudents(1).equals(List.of(new Student(100L, "name100", "050-0000100"))));
+	}
+
+	@Test
+	void resumeTokenTest() {
+		mongoTemplate.updateFirst(idQuery(DbTestCreation.ID_2), new Update().set("phone", "052-7654321"),
+				StudentDoc.class);
+		await(() -> mongoTemplate.getCollection(ChangeStreamProjector.TOKENS_COLLECTION)
+				.find(new Document("_id", "students")).first() != null);
+	}
+
+	@Test
+	void failedHandlerTest() {
+		//the batch failed by the handler is dispatched again
+		mongoTemplate.updateFirst(idQuery(DbTestCreation.ID_3), new Update().set("phone", "053-7654321"),
+				StudentDoc.class);
+		await(() -> failingOnceHandler.changedIds.contains(DbTestCreation.ID_3));
+		assertTrue(failingOnceHandler.failed.get());
+	}
+
+	@TestConfiguration
+	static class FailingOnceHandlerConfiguration {
+		@Bean
+		FailingOnceHandler failingOnceHandler() {
+			return new FailingOnceHandler();
+		}
+	}
+
+	static class FailingOnceHandler implements ProjectionHandler {
+		final AtomicBoolean failed = new AtomicBoolean();
+		final Set<Long> changedIds = ConcurrentHashMap.newKeySet();
+
+		@Override
+		public void onChanges(List<StudentChange> changes) {
+			if (failed.compareAndSet(false, true)) {
+				throw new IllegalStateException("projection failure");
+			}
+			changes.forEach(change -> changedIds.add(change.id()));
+		}
+	}
+
+	private static Query idQuery(long id) {
+		return new Query(Criteria.where("id").is(id));
+	}
+
+	private static void await(BooleanSupplier condition) {
+		long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+		while (!condition.getAsBoolean()) {
+			assertTrue(System.currentTimeMillis() < deadline, "change is not projected in time");
+			try {
+				Thread.sleep(50);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				fail(e);
+			}
+		}
+	}
+}
@@ -0,0 +1,86 @@
+package telran.students;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+
+import org.bson.Document;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.data.mongodb.MongoTransactionManager;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+import telran.students.dto.Mark;
+import telran.students.dto.NameAvgScore;
+import telran.students.dto.Student;
+import telran.students.service.ColumnarSnapshot;
+import telran.students.service.StudentsService;
+
+@SpringBootTest(properties = "app.students.columnar.enabled=true")
+class ColumnarSnapshotTests {
+	@Autowired
+	StudentsService studentsService;
+	@Autowired
+	DbTestCreation dbCreation;
+	@Autowired
+	ColumnarSnapshot columnarSnapshot;
+	@Autowired
+	MongoTemplate mongoTemplate;
+	@MockBean
+	MongoTransactionManager mongoTransactionManager;
+
+	@BeforeEach
+	void setUp() {
+		dbCreation.createDB();
+		columnarSnapshot.reload();
+	}
+
+	@Test
+	void queriesTest() {
+		assertTrue(columnarSnapshot.isReady());
+		assertIterableEquals(List.of(dbCreation.getStudent(6), dbCreation.getStudent(4)), columnarSnapshot.getBest(2));
+		assertIterableEquals(List.of(dbCreation.getStudent(7), dbCreation.getStudent(2)), columnarSnapshot.getWorst(2));
+		assertIterableEquals(List.of(new NameAvgScore(DbTestCreation.NAME_6, 100),
+				new NameAvgScore(DbTestCreation.NAME_4, 93)), columnarSnapshot.getAvgScoreGreater(90));
+		assertIterableEquals(List.of(dbCreation.getStudent(1), dbCreation.getStudent(3), dbCreation.getStudent(6)),
+				columnarSnapshot.getStudentsAllGoodMarksSubject(DbTestCreation.SUBJECT_1, 80));
+		assertIterableEquals(List.of(dbCreation.getStudent(6)), columnarSnapshot.getStudentsAllGoodMarks(95));
+		assertTrue(columnarSnapshot.getStudentsAllGoodMarksSubject("unknown subject", 0).isEmpty());
+		assertTrue(columnarSnapshot.check(10, 80, DbTestCreation.SUBJECT_1));
+	}
+
+	@Test
+	void refreshTest() {
+		Student student = new Student(100L, "name100", "050-0000100");
+		studentsService.addStudent(student);
+		LocalDate date = LocalDate.parse("2024-02-01");
+		studentsService.addMarks(Map.of(student.id(), List.of(new Mark(DbTestCreation.SUBJECT_1, date, 99),
+				new Mark(DbTestCreation.SUBJECT_2, date, 99))));
+		studentsService.addMark(DbTestCreation.ID_2, new Mark(DbTestCreation.SUBJECT_3, date, 50));
+		studentsService.updatePhone(DbTestCreation.ID_3, "053-7654321");
+		studentsService.removeStudent(DbTestCreation.ID_6);
+		assertFalse(columnarSnapshot.check(10, 80, DbTestCreation.SUBJECT_1));
+		columnarSnapshot.refresh();
+		assertTrue(columnarSnapshot.check(10, 80, DbTestCreation.SUBJECT_1));
+		assertTrue(columnarSnapshot.check(10, 60, DbTestCreation.SUBJECT_3));
+		assertIterableEquals(List.of(student), columnarSnapshot.getStudentsAllGoodMarks(95));
+	}
+
+	@Test
+	void markMissingFieldTest() {
+		//a mark without score written bypassing the service
+		mongoTemplate.updateFirst(new Query(Criteria.where("_id").is(DbTestCreation.ID_7)),
+				new Update().push("marks", new Document("s", 1).append("d", 1)), "students");
+		columnarSnapshot.reload();
+		assertTrue(columnarSnapshot.isReady());
+		assertIterableEquals(List.of(dbCreation.getStudent(7), dbCreation.getStudent(2)), columnarSnapshot.getWorst(2));
+	}
+}
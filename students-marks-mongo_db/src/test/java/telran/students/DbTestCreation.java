@@ -15,6 +15,10 @@ import org.springframework.stereotype.Component;
 
 import lombok.RequiredArgsConstructor;
 import telran.students.repo.StudentRepo;
+import telran.students.service.AvgScoresView;
+import telran.students.service.Leaderboards;
+import telran.students.service.QueryResultsCache;
+import telran.students.service.StudentsCache;
 import telran.students.dto.*;
 import telran.students.model.*;
 
@@ -22,6 +26,10 @@ import telran.students.model.*;
 @RequiredArgsConstructor
 public class DbTestCreation {
 	final StudentRepo studentRepo;
+	final StudentsCache studentsCache;
+	final AvgScoresView avgScoresView;
+	final Leaderboards leaderboards;
+	final QueryResultsCache queryResultsCache;
 	final static long ID_1 = 1l;
 	final static String NAME_1 = "name1";
 	final static String PONE_1 = "051-1234567";
@@ -98,6 +106,10 @@ public class DbTestCreation {
 		studentRepo.deleteAll();
 		List<StudentDoc> studentDocs = IntStream.range(0, students.length).mapToObj(this::indexToStudent).toList();
 		studentRepo.saveAll(studentDocs);
+		studentsCache.clear();
+		queryResultsCache.clear();
+		avgScoresView.rebuild();
+		leaderboards.reload();
 	}
 	public Mark[] getStudentMarks(long id) {
 		return marks[(int) (id - 1)];
@@ -0,0 +1,104 @@
+package telran.students;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import org.bson.Document;
+import org.bson.RawBsonDocument;
+import org.bson.codecs.DocumentCodec;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.mongodb.core.convert.MappingMongoConverter;
+import org.springframework.data.mongodb.core.convert.MongoCustomConversions;
+import org.springframework.data.mongodb.core.convert.NoOpDbRefResolver;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.convert.QueryMapper;
+
+import telran.students.configuration.MarkConverters;
+import telran.students.dto.Mark;
+import telran.students.dto.Student;
+import telran.students.model.MarkFields;
+import telran.students.model.StudentDoc;
+
+class MarkConvertersTests {
+	Mark mark = new Mark("subject1", LocalDate.parse("2024-01-05"), 95);
+	//in memory dictionary: the subject id is the index in the list
+	List<String> subjects = new ArrayList<>(List.of("subject0", "subject1"));
+	MappingMongoConverter compactConverter = getConverter(new MongoCustomConversions(
+			MarkConverters.getConverters(subjects::indexOf, subjects::get)));
+	MappingMongoConverter legacyConverter = getConverter(new MongoCustomConversions(List.of()));
+
+	@Test
+	void compactFormatTest() {
+		Document document = (Document) compactConverter.convertToMongoType(mark);
+		assertEquals(new Document(MarkFields.SUBJECT, 1)
+				.append(MarkFields.DATE, (int) mark.date().toEpochDay()).append(MarkFields.SCORE, 95), document);
+		assertEquals(mark, compactConverter.read(Mark.class, document));
+		StudentDoc studentDoc = getStudentDoc(3);
+		Document studentDocument = new Document();
+		compactConverter.write(studentDoc, studentDocument);
+		assertEquals(studentDoc.getMarks(), compactConverter.read(StudentDoc.class, studentDocument).getMarks());
+	}
+
+	@Test
+	void legacyFormatTest() {
+		Document legacyDocument = new Document(MarkFields.LEGACY_SUBJECT, "subject1")
+				.append(MarkFields.LEGACY_DATE, Date.from(mark.date().atStartOfDay(ZoneId.systemDefault()).toInstant()))
+				.append(MarkFields.LEGACY_SCORE, 95);
+		assertEquals(legacyDocument, legacyConverter.convertToMongoType(mark));
+		assertEquals(mark, compactConverter.read(Mark.class, legacyDocument));
+		//compact format written before the subjects dictionary
+		Document noDictionaryDocument = new Document(MarkFields.SUBJECT, "subject1")
+				.append(MarkFields.DATE, (int) mark.date().toEpochDay()).append(MarkFields.SCORE, 95);
+		assertEquals(mark, compactConverter.read(Mark.class, noDictionaryDocument));
+	}
+
+	@Test
+	void documentSizeTest() {
+		StudentDoc studentDoc = getStudentDoc(100);
+		int legacySize = getSize(legacyConverter, studentDoc);
+		int compactSize = getSize(compactConverter, studentDoc);
+		//per mark: the short keys save 13 bytes, the int32 date saves 4 bytes,
+		//the int32 subject id saves 9 bytes of the string "subject1"
+		assertEquals(100 * 26, legacySize - compactSize);
+	}
+
+	@Test
+	void queryMappingTest() {
+		//the stored names are not the names of the Mark properties, so they are passed as is
+		Query query = new Query(Criteria.where(MarkFields.marks(MarkFields.SCORE)).gt(80));
+		assertEquals(new Document("marks.v", new Document("$gt", 80)),
+				new QueryMapper(compactConverter).getMappedObject(query.getQueryObject(),
+						compactConverter.getMappingContext().getPersistentEntity(StudentDoc.class)));
+	}
+
+	private StudentDoc getStudentDoc(int nMarks) {
+		StudentDoc studentDoc = StudentDoc.of(new Student(1L, "name1", "051-1234567"));
+		for (int i = 0; i < nMarks; i++) {
+			studentDoc.addMark(mark);
+		}
+		return studentDoc;
+	}
+
+	private static int getSize(MappingMongoConverter converter, StudentDoc studentDoc) {
+		Document document = new Document();
+		converter.write(studentDoc, document);
+		return new RawBsonDocument(document, new DocumentCodec()).getByteBuffer().remaining();
+	}
+
+	private static MappingMongoConverter getConverter(MongoCustomConversions conversions) {
+		MongoMappingContext mappingContext = new MongoMappingContext();
+		mappingContext.setSimpleTypeHolder(conversions.getSimpleTypeHolder());
+		mappingContext.afterPropertiesSet();
+		MappingMongoConverter converter = new MappingMongoConverter(NoOpDbRefResolver.INSTANCE, mappingContext);
+		converter.setCustomConversions(conversions);
+		converter.afterPropertiesSet();
+		return converter;
+	}
+}
@@ -0,0 +1,127 @@
+package telran.students;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.data.mongodb.MongoTransactionManager;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+
+import telran.exceptions.NotFoundException;
+import telran.students.dto.Mark;
+import telran.students.model.MarksBucketDoc;
+import telran.students.model.StudentDoc;
+import telran.students.service.MarksBuckets;
+import telran.students.service.StudentsService;
+
+//the service with the marks stored in buckets of two marks, the data is migrated from the embedded marks
+@SpringBootTest(properties = { "app.students.marks.buckets.enabled=true", "app.students.marks.buckets.size=2",
+		"app.students.marks.buckets.migrate-on-startup=false" })
+class MarksBucketsTests {
+	@Autowired
+	StudentsService studentsService;
+	@Autowired
+	DbTestCreation dbCreation;
+	@Autowired
+	MarksBuckets marksBuckets;
+	@Autowired
+	MongoTemplate mongoTemplate;
+	@MockBean
+	MongoTransactionManager mongoTransactionManager;
+
+	@BeforeEach
+	void setUp() {
+		mongoTemplate.remove(new Query(), MarksBucketDoc.class);
+		dbCreation.createDB();
+		assertEquals(6, marksBuckets.migrate());
+	}
+
+	@Test
+	void migrationTest() {
+		assertEquals(0, mongoTemplate.count(new Query(Criteria.where("marks").exists(true)), StudentDoc.class));
+		//student 6 has 4 marks
+		assertEquals(2, mongoTemplate.count(new Query(Criteria.where("studentId").is(DbTestCreation.ID_6)),
+				MarksBucketDoc.class));
+		for (long id = DbTestCreation.ID_1; id <= DbTestCreation.ID_7; id++) {
+			assertIterableEquals(Arrays.asList(dbCreation.getStudentMarks(id)), studentsService.getMarks(id));
+		}
+		//statistics are kept by migration
+		assertIterableEquals(List.of(dbCreation.getStudent(6), dbCreation.getStudent(4)),
+				studentsService.getBestStudents(2));
+	}
+
+	@Test
+	void addMarkTest() {
+		Mark mark = new Mark(DbTestCreation.SUBJECT_5, LocalDate.parse("2024-02-01"), 60);
+		List<Mark> expected = new ArrayList<>(Arrays.asList(dbCreation.getStudentMarks(DbTestCreation.ID_7)));
+		for (int i = 0; i < 3; i++) {
+			expected.add(mark);
+			assertIterableEquals(expected, studentsService.addMark(DbTestCreation.ID_7, mark));
+		}
+		assertEquals(2, mongoTemplate.count(new Query(Criteria.where("studentId").is(DbTestCreation.ID_7)),
+				MarksBucketDoc.class));
+		assertIterableEquals(List.of(dbCreation.getStudent(2), dbCreation.getStudent(3), dbCreation.getStudent(5)),
+				studentsService.getStudentsMarksAmountBetween(1, 2));
+		assertThrowsExactly(NotFoundException.class, () -> studentsService.addMark(1000, mark));
+		assertEquals(0, mongoTemplate.count(new Query(Criteria.where("studentId").is(1000)), MarksBucketDoc.class));
+	}
+
+	@Test
+	void bucketSizeTest() {
+		//the marks of one call are split between the buckets of size 2
+		List<Mark> marks = new ArrayList<>();
+		for (int i = 1; i <= 5; i++) {
+			marks.add(new Mark(DbTestCreation.SUBJECT_5, LocalDate.parse("2024-02-01").plusDays(i), 60 + i));
+		}
+		assertEquals(1, studentsService.addMarks(Map.of(DbTestCreation.ID_7, marks)).nSucceeded());
+		studentsService.addMark(DbTestCreation.ID_7, marks.get(0));
+		List<MarksBucketDoc> buckets = mongoTemplate.find(new Query(Criteria.where("studentId").is(DbTestCreation.ID_7)),
+				MarksBucketDoc.class);
+		assertEquals(3, buckets.size());
+		assertTrue(buckets.stream().allMatch(bucket -> bucket.getCount() <= 2
+				&& bucket.getCount() == bucket.getMarks().size()));
+		List<Mark> expected = new ArrayList<>(marks);
+		expected.add(marks.get(0));
+		assertIterableEquals(expected, studentsService.getMarks(DbTestCreation.ID_7));
+	}
+
+	@Test
+	void marksQueriesTest() {
+		assertIterableEquals(dbCreation.getCertainMarksForStudent(DbTestCreation.ID_6, 4, 3, 2, 1),
+				studentsService.getStudentMarksAtDates(DbTestCreation.ID_6, LocalDate.parse("2023-01-20"),
+						LocalDate.parse("2024-12-31")));
+		assertIterableEquals(dbCreation.getCertainMarksForStudent(DbTestCreation.ID_1, 1, 2),
+				studentsService.getStudentSubjectMarks(DbTestCreation.ID_1, DbTestCreation.SUBJECT_1));
+		assertTrue(studentsService.getStudentSubjectMarks(DbTestCreation.ID_7, DbTestCreation.SUBJECT_1).isEmpty());
+		assertThrowsExactly(NotFoundException.class,
+				() -> studentsService.getStudentSubjectMarks(1000, DbTestCreation.SUBJECT_1));
+	}
+
+	@Test
+	void studentsQueriesTest() {
+		assertIterableEquals(List.of(dbCreation.getStudent(4), dbCreation.getStudent(6)),
+				studentsService.getStudentsAllGoodMarks(70));
+		assertIterableEquals(List.of(dbCreation.getStudent(4), dbCreation.getStudent(6)),
+				studentsService.getStudentsAllGoodMarksSubject(DbTestCreation.SUBJECT_2, 80));
+		assertTrue(studentsService.getStudentsAllGoodMarksSubject(DbTestCreation.SUBJECT_5, 60).isEmpty());
+	}
+
+	@Test
+	void removeStudentTest() {
+		studentsService.removeStudent(DbTestCreation.ID_6);
+		assertEquals(0, mongoTemplate.count(new Query(Criteria.where("studentId").is(DbTestCreation.ID_6)),
+				MarksBucketDoc.class));
+		assertThrowsExactly(NotFoundException.class, () -> studentsService.getMarks(DbTestCreation.ID_6));
+	}
+}
@@ -0,0 +1,68 @@
+package telran.students;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.mongodb.UncategorizedMongoDbException;
+
+import com.mongodb.MongoException;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import telran.exceptions.NotFoundException;
+import telran.students.service.OptimisticRetries;
+
+class OptimisticRetriesTests {
+	MeterRegistry meterRegistry = new SimpleMeterRegistry();
+	OptimisticRetries optimisticRetries = new OptimisticRetries(meterRegistry, 3, 1);
+	AtomicInteger nCalls = new AtomicInteger();
+
+	@Test
+	void conflictsRetriedTest() {
+		assertEquals("done", optimisticRetries.execute(() -> conflicting(2)));
+		assertEquals(3, nCalls.get());
+		assertEquals(2, meterRegistry.counter("students.optimistic.retries").count());
+		assertEquals(0, meterRegistry.counter("students.optimistic.failures").count());
+	}
+
+	@Test
+	void attemptsBoundedTest() {
+		assertThrowsExactly(OptimisticLockingFailureException.class,
+				() -> optimisticRetries.execute(() -> conflicting(3)));
+		assertEquals(3, nCalls.get());
+		assertEquals(1, meterRegistry.counter("students.optimistic.failures").count());
+	}
+
+	@Test
+	void otherExceptionsNotRetriedTest() {
+		assertThrowsExactly(NotFoundException.class, () -> optimisticRetries.execute(() -> {
+			nCalls.incrementAndGet();
+			throw new NotFoundException("not found");
+		}));
+		assertEquals(1, nCalls.get());
+		assertEquals(0, meterRegistry.counter("students.optimistic.retries").count());
+	}
+
+	@Test
+	void transactionWriteConflictsRetriedTest() {
+		assertEquals("done", optimisticRetries.execute(() -> {
+			if (nCalls.incrementAndGet() == 1) {
+				MongoException writeConflict = new MongoException(112, "WriteConflict");
+				writeConflict.addLabel(MongoException.TRANSIENT_TRANSACTION_ERROR_LABEL);
+				throw new UncategorizedMongoDbException("transaction aborted", writeConflict);
+			}
+			return "done";
+		}));
+		assertEquals(2, nCalls.get());
+	}
+
+	private String conflicting(int nConflicts) {
+		if (nCalls.incrementAndGet() <= nConflicts) {
+			throw new OptimisticLockingFailureException("conflict");
+		}
+		return "done";
+	}
+}
@@ -0,0 +1,86 @@
+package telran.students;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import telran.students.service.QueryResultsCache;
+
+class QueryResultsCacheTests {
+	QueryResultsCache cache = new QueryResultsCache(true, 5);
+	AtomicInteger nQueries = new AtomicInteger();
+
+	private List<Integer> query(int nElements) {
+		nQueries.incrementAndGet();
+		return Collections.nCopies(nElements, nElements);
+	}
+
+	private List<Integer> get(int nElements) {
+		return cache.get("query", List.of(nElements), () -> query(nElements));
+	}
+
+	@Test
+	void epochTest() {
+		assertEquals(List.of(2, 2), get(2));
+		assertEquals(List.of(2, 2), get(2));
+		assertEquals(1, nQueries.get());
+		cache.bumpEpoch();
+		get(2);
+		assertEquals(2, nQueries.get());
+		assertEquals(1, cache.getHits());
+		assertEquals(2, cache.getMisses());
+		assertEquals(1, cache.size());
+	}
+
+	@Test
+	void lruWeightTest() {
+		get(2);
+		get(3);
+		get(2);
+		//weight 2 + 3 + 1 exceeds 5, the least recently used is evicted
+		get(1);
+		assertEquals(1, cache.getEvictions());
+		assertEquals(3, cache.getWeight());
+		get(2);
+		assertEquals(3, nQueries.get());
+		//too heavy to be cached
+		get(6);
+		get(6);
+		assertEquals(5, nQueries.get());
+	}
+
+	@Test
+	void keysTest() {
+		cache.get("query1", List.of(1), () -> query(1));
+		cache.get("query2", List.of(1), () -> query(1));
+		cache.get("query1", List.of(2), () -> query(2));
+		assertEquals(3, nQueries.get());
+		assertEquals(3, cache.size());
+	}
+
+	@Test
+	void disabledTest() {
+		QueryResultsCache disabled = new QueryResultsCache(false, 5);
+		disabled.get("query", List.of(1), () -> query(1));
+		disabled.get("query", List.of(1), () -> query(1));
+		assertEquals(2, nQueries.get());
+		assertEquals(0, disabled.size());
+	}
+
+	@Test
+	void metricsTest() {
+		MeterRegistry registry = new SimpleMeterRegistry();
+		cache.bindTo(registry);
+		get(1);
+		get(1);
+		assertEquals(1, registry.get("students.query-cache.gets").tag("result", "hit").functionCounter().count());
+		assertEquals(0.5, registry.get("students.query-cache.hit.ratio").gauge().value());
+		assertTrue(registry.get("students.query-cache.saved").functionCounter().count() > 0);
+	}
+}
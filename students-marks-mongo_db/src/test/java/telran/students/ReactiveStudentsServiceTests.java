@@ -0,0 +1,159 @@
+package telran.students;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.data.mongodb.MongoTransactionManager;
+
+import reactor.test.StepVerifier;
+import telran.exceptions.NotFoundException;
+import telran.students.dto.Mark;
+import telran.students.dto.Student;
+import telran.students.service.ReactiveStudentsService;
+
+//scenarios of StudentsServiceTests against the reactive implementation
+@SpringBootTest(properties = "app.students.reactive.enabled=true")
+class ReactiveStudentsServiceTests {
+	@Autowired
+	ReactiveStudentsService studentsService;
+	@Autowired
+	DbTestCreation dbCreation;
+	@MockBean
+	MongoTransactionManager mongoTransactionManager;
+
+	final private long notExistedId = 999;
+	private Student notExistedStudent = new Student(notExistedId, "Vasya", "0555555555");
+	private Student firstExistedStudent;
+
+	@BeforeEach
+	void setUp() {
+		dbCreation.createDB();
+		firstExistedStudent = dbCreation.students[0];
+	}
+
+	@Test
+	void getMarksTest() {
+		assertIterableEquals(Arrays.asList(dbCreation.getStudentMarks(1)), studentsService.getMarks(1).block());
+		StepVerifier.create(studentsService.getMarks(notExistedId)).expectError(NotFoundException.class).verify();
+	}
+
+	@Test
+	void addStudentTest() {
+		assertEquals(notExistedStudent, studentsService.addStudent(notExistedStudent).block());
+		assertEquals(notExistedStudent, studentsService.getStudent(notExistedId).block());
+		StepVerifier.create(studentsService.addStudent(firstExistedStudent))
+			.expectError(IllegalStateException.class).verify();
+	}
+
+	@Test
+	void getStudentTest() {
+		assertEquals(firstExistedStudent, studentsService.getStudent(firstExistedStudent.id()).block());
+		StepVerifier.create(studentsService.getStudent(notExistedId)).expectError(NotFoundException.class).verify();
+	}
+
+	@Test
+	void updatePhoneTest() {
+		String newPhoneNumber = "999999999";
+		Student expected = new Student(firstExistedStudent.id(), firstExistedStudent.name(), newPhoneNumber);
+		assertEquals(expected, studentsService.updatePhone(firstExistedStudent.id(), newPhoneNumber).block());
+		assertEquals(expected, studentsService.getStudent(firstExistedStudent.id()).block());
+		StepVerifier.create(studentsService.updatePhone(notExistedId, newPhoneNumber))
+			.expectError(NotFoundException.class).verify();
+	}
+
+	@Test
+	void addMarkTest() {
+		Mark newMark = new Mark("subject5", LocalDate.parse("2024-01-05"), 95);
+		Mark[] currentMarks = dbCreation.getStudentMarks(firstExistedStudent.id());
+		Mark[] expected = Arrays.copyOf(currentMarks, currentMarks.length + 1);
+		expected[expected.length - 1] = newMark;
+		assertIterableEquals(Arrays.asList(expected), studentsService.addMark(firstExistedStudent.id(), newMark).block());
+		assertIterableEquals(Arrays.asList(expected), studentsService.getMarks(firstExistedStudent.id()).block());
+		StepVerifier.create(studentsService.addMark(notExistedId, newMark)).expectError(NotFoundException.class)
+			.verify();
+	}
+
+	@Test
+	void removeStudentTest() {
+		assertEquals(firstExistedStudent, studentsService.removeStudent(firstExistedStudent.id()).block());
+		StepVerifier.create(studentsService.getStudent(firstExistedStudent.id()))
+			.expectError(NotFoundException.class).verify();
+		StepVerifier.create(studentsService.removeStudent(notExistedId)).expectError(NotFoundException.class)
+			.verify();
+	}
+
+	@Test
+	void getStudentPhoneTest() {
+		assertEquals(dbCreation.getStudent(2), studentsService.getStudentByPhone(DbTestCreation.PONE_2).block());
+		assertNull(studentsService.getStudentByPhone("kuku").block());
+	}
+
+	@Test
+	void getStudentsPhonePrefixTest() {
+		assertIterableEquals(List.of(dbCreation.getStudent(2)),
+				studentsService.getStudentsByPhonePrefix(DbTestCreation.PONE_2.substring(0, 3)).collectList().block());
+		assertTrue(studentsService.getStudentsByPhonePrefix("kuku").collectList().block().isEmpty());
+	}
+
+	@Test
+	void getGoodStudentsTest() {
+		assertIterableEquals(List.of(dbCreation.getStudent(4), dbCreation.getStudent(6)),
+				studentsService.getStudentsAllGoodMarks(70).collectList().block());
+		assertTrue(studentsService.getStudentsAllGoodMarks(100).collectList().block().isEmpty());
+	}
+
+	@Test
+	void getStudentsFewMarksTest() {
+		assertIterableEquals(List.of(dbCreation.getStudent(2), dbCreation.getStudent(7)),
+				studentsService.getStudentsFewMarks(2).collectList().block());
+		assertTrue(studentsService.getStudentsFewMarks(0).collectList().block().isEmpty());
+	}
+
+	@Test
+	void getGoodStudentsSubjectTest() {
+		assertIterableEquals(List.of(dbCreation.getStudent(1), dbCreation.getStudent(3), dbCreation.getStudent(6)),
+				studentsService.getStudentsAllGoodMarksSubject(DbTestCreation.SUBJECT_1, 80).collectList().block());
+		assertTrue(studentsService.getStudentsAllGoodMarksSubject(DbTestCreation.SUBJECT_5, 60).collectList()
+				.block().isEmpty());
+	}
+
+	@Test
+	void getStudentsMarksAmountBetween() {
+		assertIterableEquals(List.of(dbCreation.getStudent(1), dbCreation.getStudent(4), dbCreation.getStudent(6)),
+				studentsService.getStudentsMarksAmountBetween(3, 10).collectList().block());
+		assertTrue(studentsService.getStudentsMarksAmountBetween(7, 20).collectList().block().isEmpty());
+	}
+
+	@Test
+	void getStudentSubjectMarks() {
+		List<Mark> expected = List.of(new Mark(DbTestCreation.SUBJECT_1, DbTestCreation.DATE_1, 80),
+				new Mark(DbTestCreation.SUBJECT_1, DbTestCreation.DATE_2, 90));
+		assertIterableEquals(expected,
+				studentsService.getStudentSubjectMarks(1, DbTestCreation.SUBJECT_1).collectList().block());
+		StepVerifier.create(studentsService.getStudentSubjectMarks(1000, DbTestCreation.SUBJECT_1))
+			.expectError(NotFoundException.class).verify();
+	}
+
+	@Test
+	void getStudentMarksAtDatesTest() {
+		assertIterableEquals(dbCreation.getCertainMarksForStudent(DbTestCreation.ID_6, 3, 2),
+				studentsService.getStudentMarksAtDates(DbTestCreation.ID_6, LocalDate.parse("2023-11-20"),
+						LocalDate.parse("2023-12-31")).collectList().block());
+	}
+
+	@Test
+	void getBestWorstStudentsTest() {
+		assertIterableEquals(List.of(dbCreation.getStudent(6), dbCreation.getStudent(4)),
+				studentsService.getBestStudents(2).collectList().block());
+		assertIterableEquals(List.of(dbCreation.getStudent(7), dbCreation.getStudent(2)),
+				studentsService.getWorstStudents(2).collectList().block());
+	}
+}
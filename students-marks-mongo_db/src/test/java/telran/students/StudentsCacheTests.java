@@ -0,0 +1,32 @@
+package telran.students;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+
+import telran.students.dto.Student;
+import telran.students.service.StudentsCache;
+
+class StudentsCacheTests {
+	StudentsCache cache = new StudentsCache(true, 10, 300);
+	Student student = new Student(1L, "name1", "051-1234567");
+
+	@Test
+	void readThroughTest() {
+		assertNull(cache.get(1));
+		cache.put(student, cache.getGeneration());
+		assertEquals(student, cache.get(1));
+		assertEquals(student, cache.getByPhone(student.phone()));
+	}
+
+	@Test
+	void invalidatedDuringReadTest() {
+		assertNull(cache.get(1));
+		long generation = cache.getGeneration();
+		//a write of the student between the read of the database and the put
+		cache.invalidate(1);
+		cache.put(student, generation);
+		assertNull(cache.get(1));
+		assertNull(cache.getByPhone(student.phone()));
+	}
+}
@@ -0,0 +1,82 @@
+package telran.students;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.LongStream;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.data.mongodb.MongoTransactionManager;
+
+import telran.students.dto.Mark;
+import telran.students.dto.Student;
+import telran.students.generator.GeneratorConfig;
+import telran.students.generator.MarksDistribution;
+import telran.students.generator.StudentsDataGenerator;
+import telran.students.model.StudentDoc;
+import telran.students.repo.StudentRepo;
+import telran.students.service.Leaderboards;
+import telran.students.service.StudentsCache;
+import telran.students.service.StudentsService;
+
+@SpringBootTest
+class StudentsDataGeneratorTests {
+	@Autowired
+	StudentsDataGenerator generator;
+	@Autowired
+	StudentsService studentsService;
+	@Autowired
+	StudentRepo studentRepo;
+	@Autowired
+	StudentsCache studentsCache;
+	@Autowired
+	Leaderboards leaderboards;
+	@MockBean
+	MongoTransactionManager mongoTransactionManager;
+
+	GeneratorConfig config = GeneratorConfig.builder().seed(7).nStudents(2000)
+			.marksDistribution(MarksDistribution.SKEWED).meanMarks(10).batchSize(300).parallelism(4).build();
+
+	@BeforeEach
+	void setUp() {
+		studentRepo.deleteAll();
+		studentsCache.clear();
+	}
+
+	@Test
+	void generateTest() {
+		long nMarks = generator.generate(config);
+		assertEquals(config.nStudents(), studentRepo.count());
+		assertEquals(nMarks, LongStream.rangeClosed(1, config.nStudents())
+				.map(id -> StudentsDataGenerator.getMarks(config, id).size()).sum());
+		assertEquals(StudentsDataGenerator.getStudent(100), studentsService.getStudent(100));
+		assertIterableEquals(StudentsDataGenerator.getMarks(config, 100), studentsService.getMarks(100));
+	}
+
+	@Test
+	void queriesAtScaleTest() {
+		generator.generate(config);
+		//the generator writes bypassing the service, so the leaderboards are reloaded
+		leaderboards.reload();
+		List<Student> expectedFewMarks = LongStream.rangeClosed(1, config.nStudents())
+				.filter(id -> StudentsDataGenerator.getMarks(config, id).size() < 3)
+				.mapToObj(StudentsDataGenerator::getStudent).toList();
+		assertIterableEquals(expectedFewMarks, studentsService.getStudentsFewMarks(3));
+
+		List<Student> expectedBest = LongStream.rangeClosed(1, config.nStudents()).boxed()
+				.filter(id -> nGoodMarks(id) > 0)
+				.sorted(Comparator.comparingLong((Long id) -> -nGoodMarks(id)).thenComparing(id -> id))
+				.limit(10).map(StudentsDataGenerator::getStudent).toList();
+		assertIterableEquals(expectedBest, studentsService.getBestStudents(10));
+	}
+
+	private long nGoodMarks(long id) {
+		return StudentsDataGenerator.getMarks(config, id).stream().mapToInt(Mark::score)
+				.filter(score -> score > StudentDoc.GOOD_SCORE_THRESHOLD).count();
+	}
+}
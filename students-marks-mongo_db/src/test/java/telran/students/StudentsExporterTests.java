@@ -0,0 +1,82 @@
+package telran.students;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.data.mongodb.MongoTransactionManager;
+
+import telran.students.export.ExportConfig;
+import telran.students.export.ExportFormat;
+import telran.students.export.ExportResult;
+import telran.students.export.StudentsExporter;
+
+@SpringBootTest
+class StudentsExporterTests {
+	private static final int N_STUDENTS = 7;
+	private static final int N_MARKS = 15;
+	@Autowired
+	StudentsExporter exporter;
+	@Autowired
+	DbTestCreation dbCreation;
+	@MockBean
+	MongoTransactionManager mongoTransactionManager;
+	@TempDir
+	Path dir;
+
+	@BeforeEach
+	void setUp() {
+		dbCreation.createDB();
+	}
+
+	@Test
+	void csvTest() throws IOException {
+		Path path = dir.resolve("students.csv");
+		ExportResult result = exporter.export(path,
+				ExportConfig.builder().format(ExportFormat.CSV).batchSize(2).bufferSize(64).build());
+		assertEquals(N_STUDENTS, result.nStudents());
+		assertEquals(N_MARKS, result.nMarks());
+		assertEquals(Files.size(path), result.nBytes());
+		List<String> lines = Files.readAllLines(path);
+		//header, a row per mark and a row of the student without marks
+		assertEquals(1 + N_MARKS + 1, lines.size());
+		assertEquals("id,name,phone,subject,date,score", lines.get(0));
+		assertTrue(lines.get(1).startsWith("1,name1,"));
+		assertTrue(lines.get(1).endsWith(",subject1," + DbTestCreation.DATE_1 + ",80"));
+		assertTrue(lines.get(N_MARKS + 1).startsWith("7,name7,"));
+		assertTrue(lines.get(N_MARKS + 1).endsWith(",,"));
+	}
+
+	@Test
+	void ndjsonGzipProgressTest() throws IOException {
+		Path path = dir.resolve("students.ndjson.gz");
+		List<ExportResult> progress = new ArrayList<>();
+		ExportResult result = exporter.export(path, ExportConfig.builder().format(ExportFormat.NDJSON).gzip(true)
+				.batchSize(3).progressInterval(2).progressListener(progress::add).build());
+		List<String> lines = new ArrayList<>();
+		try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+				new GZIPInputStream(Files.newInputStream(path)), StandardCharsets.UTF_8))) {
+			reader.lines().forEach(lines::add);
+		}
+		assertEquals(N_STUDENTS, lines.size());
+		assertEquals(lines.stream().mapToLong(line -> line.length() + 1).sum(), result.nBytes());
+		assertTrue(lines.get(0).startsWith("{\"id\":1,\"name\":\"name1\""));
+		assertTrue(lines.get(0).contains("{\"subject\":\"subject1\",\"date\":\""));
+		assertTrue(lines.get(N_STUDENTS - 1).endsWith("\"marks\":[]}"));
+		assertEquals(List.of(2L, 4L, 6L), progress.stream().map(ExportResult::nStudents).toList());
+	}
+}
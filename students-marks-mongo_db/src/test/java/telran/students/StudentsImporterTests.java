@@ -0,0 +1,143 @@
+package telran.students;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.data.mongodb.MongoTransactionManager;
+
+import telran.students.export.ExportConfig;
+import telran.students.export.ExportFormat;
+import telran.students.export.StudentsExporter;
+import telran.students.importer.ImportConfig;
+import telran.students.importer.ImportResult;
+import telran.students.importer.StudentsImporter;
+import telran.students.repo.StudentRepo;
+import telran.students.service.StudentsService;
+
+@SpringBootTest
+class StudentsImporterTests {
+	private static final int N_STUDENTS = 7;
+	private static final int N_MARKS = 15;
+	@Autowired
+	StudentsImporter importer;
+	@Autowired
+	StudentsExporter exporter;
+	@Autowired
+	StudentsService studentsService;
+	@Autowired
+	StudentRepo studentRepo;
+	@Autowired
+	DbTestCreation dbCreation;
+	@MockBean
+	MongoTransactionManager mongoTransactionManager;
+	@TempDir
+	Path dir;
+
+	@BeforeEach
+	void setUp() {
+		dbCreation.createDB();
+	}
+
+	private Path export(ExportFormat format) {
+		Path path = dir.resolve("students." + format);
+		exporter.export(path, ExportConfig.builder().format(format).build());
+		studentRepo.deleteAll();
+		return path;
+	}
+
+	private ImportConfig.ImportConfigBuilder config(ExportFormat format) {
+		//small chunks and batches to have several of them for the test data
+		return ImportConfig.builder().format(format).chunkSize(64).batchSize(2).queueCapacity(1).parsers(3)
+				.writers(2);
+	}
+
+	private void assertImported() {
+		for (long id = 1; id <= N_STUDENTS; id++) {
+			assertEquals(dbCreation.getStudent(id), studentsService.getStudent(id));
+			assertIterableEquals(List.of(dbCreation.getStudentMarks(id)), studentsService.getMarks(id));
+		}
+	}
+
+	@Test
+	void csvTest() {
+		Path path = export(ExportFormat.CSV);
+		ImportResult result = importer.importStudents(path, config(ExportFormat.CSV).build());
+		assertEquals(N_STUDENTS, result.nStudents());
+		assertEquals(N_MARKS, result.nMarks());
+		assertEquals(0, result.nRejected());
+		assertImported();
+		assertFalse(Files.exists(dir.resolve("students.CSV.checkpoint")));
+	}
+
+	@Test
+	void ndjsonRejectedRowsTest() throws IOException {
+		Path path = export(ExportFormat.NDJSON);
+		Files.writeString(path, "not a json\n{\"id\":1,\"name\":\"name1\",\"phone\":\"051-1234567\",\"marks\":"
+				+ "[{\"subject\":\"subject1\",\"date\":\"2024-13-01\",\"score\":90}]}\n", StandardOpenOption.APPEND);
+		ImportResult result = importer.importStudents(path, config(ExportFormat.NDJSON).build());
+		assertEquals(N_STUDENTS + 2, result.nRows());
+		assertEquals(N_STUDENTS, result.nStudents());
+		assertEquals(2, result.nRejected());
+		assertImported();
+		List<String> errors = Files.readAllLines(dir.resolve("students.NDJSON.errors"));
+		assertEquals(2, errors.size());
+		assertTrue(errors.get(0).endsWith("\tnot a json"));
+	}
+
+	@Test
+	void resumeTest() throws IOException {
+		Path path = export(ExportFormat.NDJSON);
+		List<String> lines = Files.readAllLines(path);
+		//the first three students are imported already
+		long offset = lines.subList(0, 3).stream().mapToLong(line -> line.getBytes(StandardCharsets.UTF_8).length + 1).sum();
+		Path checkpoint = dir.resolve("students.NDJSON.checkpoint");
+		Files.writeString(checkpoint, Long.toString(offset));
+		ImportResult result = importer.importStudents(path, config(ExportFormat.NDJSON).resume(true).build());
+		assertEquals(N_STUDENTS - 3, result.nStudents());
+		assertEquals(N_STUDENTS - 3, studentRepo.count());
+		assertFalse(studentRepo.existsById(DbTestCreation.ID_1));
+		assertFalse(Files.exists(checkpoint));
+	}
+
+	@Test
+	void resumeWrittenBatchesTest() throws IOException {
+		Path path = export(ExportFormat.NDJSON);
+		List<String> lines = Files.readAllLines(path);
+		//the first three students are imported already and the batch of the fourth one is written
+		long offset = lines.subList(0, 3).stream().mapToLong(line -> line.getBytes(StandardCharsets.UTF_8).length + 1).sum();
+		Path checkpoint = dir.resolve("students.NDJSON.checkpoint");
+		Files.writeString(checkpoint, offset + "\n" + offset + "\n");
+		importer.importStudents(path, config(ExportFormat.NDJSON).resume(true).build());
+		assertFalse(studentRepo.existsById(DbTestCreation.ID_4));
+		assertEquals(dbCreation.getStudent(DbTestCreation.ID_7), studentsService.getStudent(DbTestCreation.ID_7));
+		assertFalse(Files.exists(checkpoint));
+	}
+
+	@Test
+	void duplicatePhoneTest() throws IOException {
+		Path path = export(ExportFormat.NDJSON);
+		//the student with the phone of the student 1 is rejected, his marks aren't added to anybody
+		Files.writeString(path, "{\"id\":100,\"name\":\"name100\",\"phone\":\"%s\",\"marks\":"
+				.formatted(DbTestCreation.PONE_1) + "[{\"subject\":\"subject1\",\"date\":\"2024-01-01\",\"score\":90}]}\n",
+				StandardOpenOption.APPEND);
+		ImportResult result = importer.importStudents(path, config(ExportFormat.NDJSON).build());
+		assertEquals(N_STUDENTS, result.nStudents());
+		assertEquals(N_MARKS, result.nMarks());
+		assertEquals(1, result.nRejected());
+		assertImported();
+		assertFalse(studentRepo.existsById(100L));
+		assertTrue(Files.readString(dir.resolve("students.NDJSON.errors")).contains("already belongs to another student"));
+	}
+}
@@ -6,11 +6,17 @@ import java.time.LocalDate;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collector;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
+import java.util.stream.Stream;
 
 import org.apache.commons.lang3.IntegerRange;
+import org.bson.Document;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
@@ -20,13 +26,33 @@ import org.junit.jupiter.api.TestInstance.Lifecycle;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.data.mongodb.MongoTransactionManager;
+import org.springframework.data.mongodb.core.MongoTemplate;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import telran.exceptions.NotFoundException;
+import telran.students.configuration.ReadRouting;
+import telran.students.configuration.WriteTimesListener;
+import telran.students.dto.AvgScoreReport;
+import telran.students.dto.BulkItemError;
+import telran.students.dto.BulkResult;
 import telran.students.dto.Mark;
+import telran.students.dto.NameAvgScore;
 import telran.students.dto.Student;
+import telran.students.dto.ScoreBin;
+import telran.students.dto.StatsPeriod;
+import telran.students.dto.StudentsPage;
+import telran.students.dto.SubjectPeriodStats;
+import telran.students.model.MarkFields;
 import telran.students.model.StudentDoc;
+import telran.students.service.AvgScoresView;
+import telran.students.service.Leaderboards;
+import telran.students.service.QueryResultsCache;
+import telran.students.service.StudentsCache;
 import telran.students.service.StudentsService;
+import telran.students.service.SubjectsDictionary;
 
 @SpringBootTest
 //@TestInstance(Lifecycle.PER_CLASS)
@@ -35,6 +61,24 @@ class StudentsServiceTests {
 	StudentsService studentsService;
 	@Autowired
 	DbTestCreation dbCreation;
+	@Autowired
+	StudentsCache studentsCache;
+	@Autowired
+	MeterRegistry meterRegistry;
+	@Autowired
+	AvgScoresView avgScoresView;
+	@Autowired
+	SubjectsDictionary subjectsDictionary;
+	@Autowired
+	Leaderboards leaderboards;
+	@Autowired
+	MongoTemplate mongoTemplate;
+	@Autowired
+	ReadRouting readRouting;
+	@Autowired
+	QueryResultsCache queryResultsCache;
+	@Autowired
+	WriteTimesListener writeTimesListener;
 	@MockBean
 	MongoTransactionManager mongoTransactionManager;
 	
@@ -67,6 +111,9 @@ class StudentsServiceTests {
 		
 		
 		assertThrowsExactly(IllegalStateException.class, () -> studentsService.addStudent(firstExistedStudent));
+		IllegalStateException duplicatedPhone = assertThrowsExactly(IllegalStateException.class,
+				() -> studentsService.addStudent(new Student(notExistedId + 1, "name", firstExistedStudent.phone())));
+		assertTrue(duplicatedPhone.getMessage().startsWith("Phone"));
 
 	}
 
@@ -98,7 +145,212 @@ class StudentsServiceTests {
 		
 		
 		assertThrowsExactly(NotFoundException.class, () -> studentsService.updatePhone(notExistedStudent.id(), newPhoneNumber));
+		assertThrowsExactly(IllegalStateException.class,
+				() -> studentsService.updatePhone(firstExistedStudent.id(), DbTestCreation.PONE_2));
+		
+	}
+	
+	@Test
+	@DisplayName("concurrent phone updates do not lose marks")
+	void concurrentUpdatesTest() throws InterruptedException {
+		long id = firstExistedStudent.id();
+		int nMarks = studentsService.getMarks(id).size();
+		int nThreads = 4;
+		int nUpdates = 20;
+		Mark mark = new Mark(DbTestCreation.SUBJECT_1, DbTestCreation.DATE_1, 70);
+		List<String> phones = IntStream.range(0, nThreads).mapToObj(i -> "050-000000" + i).toList();
+		ExecutorService executor = Executors.newFixedThreadPool(nThreads * 2);
+		for (String phone : phones) {
+			executor.execute(() -> {
+				for (int i = 0; i < nUpdates; i++) {
+					try {
+						studentsService.updatePhone(id, phone);
+					} catch (OptimisticLockingFailureException e) {
+						//retries are exhausted, the update is rejected rather than lost
+					}
+				}
+			});
+			executor.execute(() -> {
+				for (int i = 0; i < nUpdates; i++) {
+					studentsService.appendMark(id, mark);
+				}
+			});
+		}
+		executor.shutdown();
+		assertTrue(executor.awaitTermination(1, TimeUnit.MINUTES));
+		assertEquals(nMarks + nThreads * nUpdates, studentsService.getMarks(id).size());
+		assertTrue(phones.contains(studentsService.getStudent(id).phone()));
+		Document studentDocument = mongoTemplate.findById(id, Document.class, "students");
+		assertTrue(studentDocument.get("version", Number.class).longValue() >= nThreads * nUpdates);
+	}
+	
+	@Test
+	@DisplayName("analytics reads see the preceding writes")
+	void analyticsReadsTest() {
+		assertTrue(readRouting.isEnabled());
+		int nMarks = studentsService.getMarks(DbTestCreation.ID_7).size();
+		studentsService.addMark(DbTestCreation.ID_7, new Mark(DbTestCreation.SUBJECT_1, DbTestCreation.DATE_1, 70));
+		assertNotNull(writeTimesListener.getOperationTime());
+		assertTrue(studentsService.getStudentsMarksAmountBetween(nMarks + 1, nMarks + 1)
+				.contains(dbCreation.getStudent(7)));
+		assertNull(readRouting.getReadPreference());
+		assertNull(readRouting.getSession());
+	}
+	
+	@Test
+	@DisplayName("query results are cached until a write")
+	void queryResultsCacheTest() {
+		long hits = queryResultsCache.getHits();
+		List<Student> students = studentsService.getStudentsAllGoodMarksSubject(DbTestCreation.SUBJECT_1, 80);
+		assertTrue(students.contains(dbCreation.getStudent(1)));
+		assertEquals(students, studentsService.getStudentsAllGoodMarksSubject(DbTestCreation.SUBJECT_1, 80));
+		assertEquals(hits + 1, queryResultsCache.getHits());
+		studentsService.addMark(DbTestCreation.ID_1, new Mark(DbTestCreation.SUBJECT_1, DbTestCreation.DATE_1, 50));
+		assertFalse(studentsService.getStudentsAllGoodMarksSubject(DbTestCreation.SUBJECT_1, 80)
+				.contains(dbCreation.getStudent(1)));
+		assertEquals(hits + 1, queryResultsCache.getHits());
+	}
+	
+	@Test
+	@DisplayName("marks statistics by subject and month")
+	void marksStatsTest() {
+		List<SubjectPeriodStats> stats = studentsService.getMarksStats(LocalDate.parse("2023-10-01"),
+				LocalDate.parse("2023-11-30"), StatsPeriod.MONTH, 10);
+		assertIterableEquals(List.of(
+				new SubjectPeriodStats(DbTestCreation.SUBJECT_1, LocalDate.parse("2023-10-01"), 4, 82.5, 70, 100,
+						List.of(new ScoreBin(70, 80, 1), new ScoreBin(80, 90, 2), new ScoreBin(100, 110, 1))),
+				new SubjectPeriodStats(DbTestCreation.SUBJECT_1, LocalDate.parse("2023-11-01"), 1, 90, 90, 90,
+						List.of(new ScoreBin(90, 100, 1)))),
+				stats.stream().filter(s -> s.subject().equals(DbTestCreation.SUBJECT_1)).toList());
+		assertEquals(5, stats.size());
+		List<SubjectPeriodStats> yearStats = studentsService.getMarksStats(DbTestCreation.DATE_1,
+				DbTestCreation.DATE_4, StatsPeriod.YEAR, 50);
+		assertEquals(List.of(LocalDate.parse("2023-01-01"), LocalDate.parse("2024-01-01")),
+				yearStats.stream().filter(s -> s.subject().equals(DbTestCreation.SUBJECT_4))
+					.map(SubjectPeriodStats::periodStart).toList());
+		List<SubjectPeriodStats> weekStats = studentsService.getMarksStats(DbTestCreation.DATE_1,
+				DbTestCreation.DATE_1, StatsPeriod.WEEK, 100);
+		//2023-10-20 is Friday
+		assertTrue(weekStats.stream().allMatch(s -> s.periodStart().equals(LocalDate.parse("2023-10-16"))));
+		assertThrowsExactly(IllegalArgumentException.class, () -> studentsService.getMarksStats(
+				DbTestCreation.DATE_1, DbTestCreation.DATE_4, StatsPeriod.DAY, 0));
+		assertThrowsExactly(IllegalArgumentException.class, () -> studentsService.getMarksStats(
+				DbTestCreation.DATE_4, DbTestCreation.DATE_1, StatsPeriod.DAY, 100));
+	}
+	
+	@Test
+	@DisplayName("marks statistics are updated with marks")
+	void marksStatisticsTest() {
+		Student student7 = dbCreation.getStudent(7);
+		assertIterableEquals(List.of(student7), studentsService.getWorstStudents(1));
+		studentsService.addMark(student7.id(), new Mark(DbTestCreation.SUBJECT_1, DbTestCreation.DATE_1, 95));
+		assertIterableEquals(List.of(dbCreation.getStudent(2)), studentsService.getWorstStudents(1));
+		studentsService.appendMark(student7.id(), new Mark(DbTestCreation.SUBJECT_2, DbTestCreation.DATE_2, 95));
+		studentsService.appendMark(student7.id(), new Mark(DbTestCreation.SUBJECT_3, DbTestCreation.DATE_3, 95));
+		assertIterableEquals(List.of(dbCreation.getStudent(6), dbCreation.getStudent(4), student7),
+				studentsService.getBestStudents(3));
+		assertTrue(studentsService.getStudentsMarksAmountBetween(3, 3).contains(student7));
+	}
+	
+	@Test
+	@DisplayName("students cache test")
+	void studentsCacheTest() {
+		long hits = studentsCache.getHits();
+		assertEquals(firstExistedStudent, studentsService.getStudent(firstExistedStudent.id()));
+		assertEquals(firstExistedStudent, studentsService.getStudent(firstExistedStudent.id()));
+		assertEquals(firstExistedStudent, studentsService.getStudentByPhone(firstExistedStudent.phone()));
+		assertEquals(hits + 2, studentsCache.getHits());
 		
+		String newPhoneNumber = "999999999";
+		studentsService.updatePhone(firstExistedStudent.id(), newPhoneNumber);
+		assertNull(studentsService.getStudentByPhone(firstExistedStudent.phone()));
+		assertEquals(newPhoneNumber, studentsService.getStudent(firstExistedStudent.id()).phone());
+		
+		studentsService.removeStudent(firstExistedStudent.id());
+		assertThrowsExactly(NotFoundException.class, () -> studentsService.getStudent(firstExistedStudent.id()));
+		assertNull(studentsService.getStudentByPhone(newPhoneNumber));
+	}
+	
+	@Test
+	@DisplayName("service methods are timed")
+	void serviceMetricsTest() {
+		long nSucceeded = getMarksCallsCount("none");
+		long nFailed = getMarksCallsCount("NotFoundException");
+		studentsService.getMarks(firstExistedStudent.id());
+		assertThrowsExactly(NotFoundException.class, () -> studentsService.getMarks(notExistedId));
+		assertEquals(nSucceeded + 1, getMarksCallsCount("none"));
+		assertEquals(nFailed + 1, getMarksCallsCount("NotFoundException"));
+	}
+	
+	private long getMarksCallsCount(String exception) {
+		Timer timer = meterRegistry.find("students.service").tag("method", "getMarks")
+				.tag("exception", exception).timer();
+		return timer == null ? 0 : timer.count();
+	}
+	
+	@Test
+	@DisplayName("marks store subject ids of the dictionary")
+	void subjectsDictionaryTest() {
+		int subjectId = subjectsDictionary.findId(DbTestCreation.SUBJECT_1);
+		assertNotEquals(SubjectsDictionary.NO_ID, subjectId);
+		assertEquals(DbTestCreation.SUBJECT_1, subjectsDictionary.getName(subjectId));
+		assertEquals(SubjectsDictionary.NO_ID, subjectsDictionary.findId("unknown subject"));
+		Document studentDocument = mongoTemplate.findById(DbTestCreation.ID_1, Document.class, "students");
+		assertEquals(subjectId, studentDocument.getList("marks", Document.class).get(0).get(MarkFields.SUBJECT));
+		assertTrue(studentsService.getStudentSubjectMarks(DbTestCreation.ID_1, "unknown subject").isEmpty());
+		assertTrue(studentsService.getStudentsAllGoodMarksSubject("unknown subject", 0).isEmpty());
+		//the subject missing in the dictionary is found after it's added
+		assertEquals(SubjectsDictionary.NO_ID, subjectsDictionary.findId("new subject"));
+		Mark newMark = new Mark("new subject", LocalDate.parse("2024-01-05"), 95);
+		studentsService.addMark(DbTestCreation.ID_1, newMark);
+		assertIterableEquals(List.of(newMark), studentsService.getStudentSubjectMarks(DbTestCreation.ID_1, "new subject"));
+	}
+	
+	@Test
+	@DisplayName("leaderboards are updated by the writes")
+	void leaderboardsTest() {
+		assertTrue(leaderboards.isReady());
+		assertTrue(leaderboards.check(10));
+		studentsService.addMark(DbTestCreation.ID_7, new Mark(DbTestCreation.SUBJECT_1, DbTestCreation.DATE_1, 95));
+		studentsService.addMarks(Map.of(DbTestCreation.ID_2, List.of(new Mark(DbTestCreation.SUBJECT_1,
+				DbTestCreation.DATE_1, 90), new Mark(DbTestCreation.SUBJECT_2, DbTestCreation.DATE_1, 90))));
+		studentsService.addStudent(notExistedStudent);
+		studentsService.removeStudent(DbTestCreation.ID_6);
+		studentsService.updatePhone(DbTestCreation.ID_4, "054-7654321");
+		assertTrue(leaderboards.check(10));
+		//good marks: student 4 - 3, student 2 - 2, students 1 and 7 - 1
+		assertIterableEquals(List.of(new Student(DbTestCreation.ID_4, DbTestCreation.NAME_4, "054-7654321"),
+				dbCreation.getStudent(2)), studentsService.getBestStudents(2));
+		assertIterableEquals(List.of(notExistedStudent), studentsService.getWorstStudents(1));
+	}
+	
+	@Test
+	@DisplayName("leaderboards count the writes concurrent with reload once")
+	void leaderboardsReloadTest() throws InterruptedException {
+		int nThreads = 4;
+		int nWrites = 50;
+		ExecutorService executor = Executors.newFixedThreadPool(nThreads);
+		for (int i = 0; i < nThreads; i++) {
+			long id = i % 2 == 0 ? DbTestCreation.ID_7 : DbTestCreation.ID_2;
+			int score = 81 + i;
+			executor.execute(() -> {
+				for (int j = 0; j < nWrites; j++) {
+					studentsService.appendMark(id, new Mark(DbTestCreation.SUBJECT_1, DbTestCreation.DATE_1, score));
+				}
+			});
+		}
+		for (int i = 0; i < 5; i++) {
+			leaderboards.reload();
+		}
+		executor.shutdown();
+		assertTrue(executor.awaitTermination(1, TimeUnit.MINUTES));
+		//the students written with an older generation are read again asynchronously
+		boolean checked = leaderboards.check(10);
+		for (int i = 0; i < 50 && !checked; i++) {
+			Thread.sleep(100);
+			checked = leaderboards.check(10);
+		}
+		assertTrue(checked);
 	}
 	
 	@Test
@@ -137,6 +389,37 @@ class StudentsServiceTests {
 	}
 
 	
+	@Test
+	@DisplayName("add students bulk test")
+	void addStudentsTest() {
+		Student newStudent = new Student(notExistedId + 1, "Petya", "0555555556");
+		Student samePhoneStudent = new Student(notExistedId + 2, "Vasya", DbTestCreation.PONE_2);
+		BulkResult result = studentsService.addStudents(List.of(notExistedStudent, firstExistedStudent, newStudent,
+				samePhoneStudent));
+		assertEquals(2, result.nSucceeded());
+		assertEquals(2, result.errors().size());
+		assertEquals(firstExistedStudent.id(), result.errors().get(0).id());
+		assertEquals(BulkItemError.Reason.DUPLICATE_ID, result.errors().get(0).reason());
+		assertEquals(samePhoneStudent.id(), result.errors().get(1).id());
+		assertEquals(BulkItemError.Reason.DUPLICATE_PHONE, result.errors().get(1).reason());
+		assertEquals(notExistedStudent, studentsService.getStudent(notExistedId));
+		assertEquals(newStudent, studentsService.getStudent(newStudent.id()));
+	}
+
+	@Test
+	@DisplayName("add marks bulk test")
+	void addMarksTest() {
+		Mark newMark1 = new Mark("subject5", LocalDate.parse("2024-01-05"), 95);
+		Mark newMark2 = new Mark("subject5", LocalDate.parse("2024-01-06"), 75);
+		BulkResult result = studentsService.addMarks(Map.of(DbTestCreation.ID_7, List.of(newMark1, newMark2),
+				notExistedId, List.of(newMark1)));
+		assertEquals(1, result.nSucceeded());
+		assertEquals(List.of(new BulkItemError(notExistedId, BulkItemError.Reason.NOT_FOUND,
+				String.format("Student %d not found", notExistedId))),
+				result.errors());
+		assertIterableEquals(List.of(newMark1, newMark2), studentsService.getMarks(DbTestCreation.ID_7));
+	}
+
 	@Test
 	void getStudentPhoneTest() {
 		Student student2 = dbCreation.getStudent(2);
@@ -153,12 +436,47 @@ class StudentsServiceTests {
 		assertTrue(studentsService.getStudentsByPhonePrefix("kuku").isEmpty());
 	}
 	@Test
+	void getStudentsPhonePrefixPagesTest() {
+		List<Student> page1 = studentsService.getStudentsByPhonePrefix("05", null, 3);
+		assertIterableEquals(List.of(dbCreation.getStudent(1), dbCreation.getStudent(2), dbCreation.getStudent(3)), page1);
+		List<Student> page2 = studentsService.getStudentsByPhonePrefix("05", page1.get(2).phone(), 3);
+		assertIterableEquals(List.of(dbCreation.getStudent(4), dbCreation.getStudent(5), dbCreation.getStudent(6)), page2);
+		List<Student> page3 = studentsService.getStudentsByPhonePrefix("05", page2.get(2).phone(), 3);
+		assertIterableEquals(List.of(dbCreation.getStudent(7)), page3);
+		assertTrue(studentsService.getStudentsByPhonePrefix("05", page3.get(0).phone(), 3).isEmpty());
+		assertThrowsExactly(IllegalArgumentException.class, () -> studentsService.getStudentsByPhonePrefix("05", null, 0));
+		//prefix symbols are not regex symbols
+		assertTrue(studentsService.getStudentsByPhonePrefix("05.").isEmpty());
+		assertTrue(studentsService.getStudentsByPhonePrefix(DbTestCreation.PONE_2).isEmpty());
+	}
+	@Test
 	void getGoodStudentsTest() {
 		List<Student> expected = List.of(dbCreation.getStudent(4), dbCreation.getStudent(6));
 		List<Student> actual = studentsService.getStudentsAllGoodMarks(70);
 		assertIterableEquals(expected, actual);
 		assertTrue(studentsService.getStudentsAllGoodMarks(100).isEmpty());
 	}
+	@Test
+	void studentsStreamsAndPagesTest() {
+		try (Stream<Student> students = studentsService.streamStudentsAllGoodMarks(70)) {
+			assertIterableEquals(studentsService.getStudentsAllGoodMarks(70), students.toList());
+		}
+		try (Stream<Student> students = studentsService.streamStudentsByPhonePrefix("05")) {
+			assertIterableEquals(Arrays.asList(dbCreation.students), students.toList());
+		}
+		StudentsPage page1 = studentsService.getStudentsMarksAmountBetween(0, 10, null, 4);
+		assertIterableEquals(List.of(dbCreation.getStudent(1), dbCreation.getStudent(2), dbCreation.getStudent(3),
+				dbCreation.getStudent(4)), page1.students());
+		StudentsPage page2 = studentsService.getStudentsMarksAmountBetween(0, 10, page1.nextPageToken(), 4);
+		assertIterableEquals(List.of(dbCreation.getStudent(5), dbCreation.getStudent(6), dbCreation.getStudent(7)),
+				page2.students());
+		assertNull(page2.nextPageToken());
+		assertThrowsExactly(IllegalArgumentException.class,
+				() -> studentsService.getStudentsFewMarks(2, "kuku", 4));
+		assertThrowsExactly(IllegalArgumentException.class,
+				() -> studentsService.getStudentsFewMarks(2, null, 0));
+	}
+	
 	@Test
 	void getStudentsFewMarksTest() {
 		List<Student> expected = List.of(dbCreation.getStudent(2), dbCreation.getStudent(7));
@@ -208,6 +526,26 @@ class StudentsServiceTests {
 	}
 	
 	
+	@Test
+	void getStudentAvgScoreGreaterTest() {
+		List<NameAvgScore> expected = List.of(new NameAvgScore(DbTestCreation.NAME_6, 100),
+				new NameAvgScore(DbTestCreation.NAME_4, 93));
+		assertIterableEquals(expected, studentsService.getStudentAvgScoreGreater(80));
+		
+		studentsService.addMark(DbTestCreation.ID_7, new Mark(DbTestCreation.SUBJECT_1, DbTestCreation.DATE_1, 95));
+		AvgScoreReport staleReport = studentsService.getStudentAvgScoreReport(80);
+		assertIterableEquals(expected, staleReport.students());
+		assertEquals(1, staleReport.nPendingStudents());
+		
+		avgScoresView.refresh();
+		AvgScoreReport report = studentsService.getStudentAvgScoreReport(80);
+		assertIterableEquals(List.of(new NameAvgScore(DbTestCreation.NAME_6, 100),
+				new NameAvgScore(DbTestCreation.NAME_7, 95), new NameAvgScore(DbTestCreation.NAME_4, 93)),
+				report.students());
+		assertEquals(0, report.nPendingStudents());
+		assertFalse(report.refreshedAt().isBefore(staleReport.refreshedAt()));
+	}
+	
 	@Test
 	void getStudentMarksAtDatesTest() {
 		//TODO
@@ -233,6 +571,8 @@ class StudentsServiceTests {
 		
 		assertTrue(studentsService.getStudentMarksAtDates(DbTestCreation.ID_6, LocalDate.parse("2024-01-02"), LocalDate.parse("2024-10-10")).isEmpty());
 		assertTrue(studentsService.getStudentMarksAtDates(DbTestCreation.ID_6, LocalDate.parse("2023-01-01"), LocalDate.parse("2023-09-10")).isEmpty());
+		assertThrowsExactly(NotFoundException.class, () -> studentsService.getStudentMarksAtDates(1000,
+				LocalDate.parse("2023-01-01"), LocalDate.parse("2024-12-31")));
 	}
 	@Test
 	void getBestStudentsTest() {